@@ -6,9 +6,14 @@
 package msweep;
 
 import msweep.controller.MouseController;
+import msweep.model.GameConfig;
+import msweep.model.GameConfig.WinRule;
 import msweep.model.MineField;
 import msweep.model.MineParameters;
+import msweep.model.MinePlacement;
+import msweep.model.ReservoirPlacement;
 import msweep.view.Board;
+import util.Utils;
 
 /**
  * The container for the main method.
@@ -24,10 +29,50 @@ public class Msweep {
      * The command line argument for debugging.
      */
     private static final String DEBUG_ARG = "debug";
+    /**
+     * The command line argument prefix for the MineField size.
+     */
+    private static final String SIZE_ARG = "size=";
+    /**
+     * The command line argument prefix for an exact number of mines.
+     */
+    private static final String MINES_ARG = "mines=";
+    /**
+     * The command line argument prefix for the fraction of tiles with mines.
+     */
+    private static final String DENSITY_ARG = "density=";
+    /**
+     * The command line argument prefix for a fixed mine placement seed.
+     */
+    private static final String SEED_ARG = "seed=";
+    /**
+     * The command line argument prefix for the mine placement strategy.
+     */
+    private static final String PLACEMENT_ARG = "placement=";
+    /**
+     * The command line argument prefix for the win rule.
+     */
+    private static final String WIN_ARG = "win=";
+    /**
+     * The command line argument for a lazily built, chunked MineField.
+     */
+    private static final String CHUNKED_ARG = "chunked";
+    /**
+     * The command line argument for boards which can be won without guessing.
+     */
+    private static final String NO_GUESS_ARG = "noguess";
     
     /**
      * If an argument is passed which is the same as {@link DEBUG_ARG} console
      * logging and other debug options will be enabled.
+     * <p> The game is configured with {@code size=N} and one of
+     * {@code mines=N} or {@code density=D}. Missing values fall back to the
+     * defaults in {@link MineParameters}. {@code seed=N} fixes the mine
+     * layout, {@code placement=shuffle|reservoir} picks how mines are
+     * placed and {@code win=flags|reveal|either} picks how a game is won.
+     * {@code chunked} builds the field lazily from a density, allowing much
+     * larger sizes. {@code noguess} only deals boards which can be won
+     * without guessing, starting from the center.</p>
      * @param args the command line arguments
      */
     public static void main(String[] args) {
@@ -37,12 +82,14 @@ public class Msweep {
                 debug = true;
             }
         }
-        // Generate a model
-        MineField mf = new MineField(MineParameters.FIELD_SIZE);
-        // Generate a view
-        Board brd = new Board();
+        Utils.setConsoleLogging(debug);
+        GameConfig config = parseConfig(args);
         // Generate a controller
-        MouseController controller = new MouseController();
+        MouseController controller = new MouseController(config);
+        // Generate a model, waiting for the first board if it's generated
+        MineField mf = controller.createMineField(true);
+        // Generate a view
+        Board brd = new Board(config);
         // Link the controller to model and view
         controller.addMineField(mf);
         controller.addBoard(brd);
@@ -54,6 +101,82 @@ public class Msweep {
         // Any resetting of the model is handled by the controller after this.
     }
     
+    /**
+     * Build the game configuration from the command line arguments.
+     * @param args the command line arguments
+     * @return 
+     */
+    private static GameConfig parseConfig(String[] args) {
+        int size = MineParameters.DEFAULT_FIELD_SIZE;
+        Integer mines = null;
+        Double density = null;
+        Long seed = null;
+        MinePlacement placement = new ReservoirPlacement();
+        WinRule winRule = WinRule.FLAG_ALL_MINES;
+        boolean chunked = false;
+        boolean noGuess = false;
+        try {
+            for (String s: args) {
+                if (s.equals(CHUNKED_ARG)) {
+                    chunked = true;
+                }
+                else if (s.equals(NO_GUESS_ARG)) {
+                    noGuess = true;
+                }
+                else if (s.startsWith(SIZE_ARG)) {
+                    size = Integer.parseInt(s.substring(SIZE_ARG.length()));
+                }
+                else if (s.startsWith(MINES_ARG)) {
+                    mines = Integer.parseInt(s.substring(MINES_ARG.length()));
+                }
+                else if (s.startsWith(DENSITY_ARG)) {
+                    density = Double.parseDouble(s.substring(DENSITY_ARG.length()));
+                }
+                else if (s.startsWith(SEED_ARG)) {
+                    seed = Long.parseLong(s.substring(SEED_ARG.length()));
+                }
+                else if (s.startsWith(PLACEMENT_ARG)) {
+                    placement = MinePlacement.fromName(s.substring(PLACEMENT_ARG.length()));
+                }
+                else if (s.startsWith(WIN_ARG)) {
+                    winRule = WinRule.fromName(s.substring(WIN_ARG.length()));
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad numeric argument: " + e.getMessage(), e);
+        }
+        if (mines != null && density != null) {
+            throw new IllegalArgumentException("Only one of mines and density may be given");
+        }
+        GameConfig config;
+        if (chunked) {
+            if (mines != null) {
+                throw new IllegalArgumentException("Chunked fields take a density, not a mine count");
+            }
+            config = GameConfig.chunked(size,
+                    density != null ? density : GameConfig.defaults().getDensity());
+        }
+        else if (mines != null) {
+            config = new GameConfig(size, mines);
+        }
+        else if (density != null) {
+            config = GameConfig.withDensity(size, density);
+        }
+        else if (size == MineParameters.DEFAULT_FIELD_SIZE) {
+            config = GameConfig.defaults();
+        }
+        else {
+            // Keep the default density for other sizes
+            config = GameConfig.withDensity(size, GameConfig.defaults().getDensity());
+        }
+        config = config.withPlacement(placement).withWinRule(winRule).withNoGuess(noGuess);
+        if (seed != null) {
+            config = config.withSeed(seed);
+        }
+        return config;
+    }
+    
     /**
      * Check whether the debug flag has been set.
      * @return 
@@ -0,0 +1,101 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import msweep.model.GameConfig;
+import msweep.model.MineField;
+import util.Utils;
+import util.Utils.LoggerLevel;
+
+/**
+ * Builds the next MineField on a background thread while the current game
+ * is played, so starting a new game only has to swap it in.
+ * <p> One board is prepared at a time, for one configuration. Preparing
+ * another cancels the first, and so does taking it before it is ready, so
+ * the caller never waits for a board to be built.</p>
+ * @author Nick Smith
+ */
+class BoardFactory {
+
+    /**
+     * Single background thread the boards are built on.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Configuration of the board being prepared, or null if there is none.
+     */
+    private GameConfig config;
+
+    /**
+     * The board being prepared, or null if there is none.
+     */
+    private Future<MineField> next;
+
+    /**
+     * Construct a factory with nothing prepared.
+     */
+    BoardFactory() {
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "board-factory");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start building a board in the background, replacing any board already
+     * being prepared.
+     * @param config configuration the board is built for.
+     * @param builder builds the board.
+     */
+    synchronized void prepare(GameConfig config, Callable<MineField> builder) {
+        if (this.next != null) {
+            this.next.cancel(true);
+        }
+        this.config = config;
+        this.next = this.executor.submit(builder);
+    }
+
+    /**
+     * Take the prepared board, if it has been built. This is called on the
+     * event thread, so it never waits: a board still being built, such as
+     * one waiting for a search, is cancelled instead.
+     * @param config configuration the board must have been built for.
+     * @return the board, or null if none was prepared for the configuration,
+     * it isn't ready yet, or building it failed.
+     */
+    synchronized MineField take(GameConfig config) {
+        if (this.next == null || !this.config.equals(config)) {
+            return null;
+        }
+        Future<MineField> taken = this.next;
+        this.next = null;
+        this.config = null;
+        if (!taken.isDone()) {
+            Utils.log("The next MineField isn't ready, cancelling it", LoggerLevel.MEDIUM);
+            taken.cancel(true);
+            return null;
+        }
+        try {
+            return taken.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (CancellationException | ExecutionException e) {
+            Utils.log("Building the next MineField failed: " + e, LoggerLevel.HIGH);
+            return null;
+        }
+    }
+}
@@ -6,30 +6,176 @@
 package msweep.controller;
 
 import java.awt.Point;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import javax.swing.SwingUtilities;
+import msweep.model.GameConfig;
 import msweep.model.MineField;
-import msweep.model.MineParameters;
+import msweep.solver.NoGuessGenerator;
 import msweep.view.Board;
 import util.Utils;
 import util.Utils.LoggerLevel;
 
 /**
  * Provides the Controller operations for the game.
+ * <p> Left click flips a tile and right click flags it. Middle click, or
+ * pressing both left and right, chords a flipped tile. Besides playing with
+ * the mouse, the wheel zooms the map and the arrow keys pan it.</p>
  * @author Nick Smith
  */
-public class MouseController implements MouseListener, MouseMotionListener {
+public class MouseController implements MouseListener, MouseMotionListener,
+        MouseWheelListener, KeyListener {
+    
+    /**
+     * Number of pixels the map moves for each arrow key press.
+     */
+    private static final int PAN_STEP = 64;
 
     // Contains both the board and minefield to access their public methods.
     private Board board;
     private MineField minefield;
     
     /**
-     * Construct a new mouse controller.
+     * Reused to hold the coordinates of the tile under the mouse.
+     */
+    private final Point coords = new Point();
+    
+    /**
+     * Whether the left button is held down.
+     */
+    private boolean leftDown;
+    
+    /**
+     * Whether the right button is held down.
+     */
+    private boolean rightDown;
+    
+    /**
+     * Whether both buttons have been held together since they were last
+     * both released, so their releases chord rather than flip or flag.
+     */
+    private boolean chording;
+    
+    /**
+     * Configuration used whenever a new MineField is generated.
+     */
+    private GameConfig config;
+    
+    /**
+     * Keeps boards which can be won without guessing ready, or null if the
+     * configuration doesn't ask for them.
+     */
+    private NoGuessGenerator generator;
+    
+    /**
+     * Builds the next MineField in the background while a game is played.
+     */
+    private final BoardFactory factory;
+    
+    /**
+     * Construct a new mouse controller, which starts building the MineField
+     * for the game after the first straight away.
+     * @param config configuration for the MineFields this controller creates.
+     */
+    public MouseController(GameConfig config) {
+        this.config = config;
+        this.generator = startGenerator(config);
+        this.factory = new BoardFactory();
+        prepareNext();
+    }
+    
+    /**
+     * Start generating boards in the background if the configuration asks
+     * for boards which can be won without guessing.
+     * @param config
+     * @return the generator, or null if none is needed.
      */
-    public MouseController() {}
+    private static NoGuessGenerator startGenerator(GameConfig config) {
+        if (!config.isNoGuess()) {
+            return null;
+        }
+        NoGuessGenerator generator = new NoGuessGenerator(config,
+                NoGuessGenerator.DEFAULT_POOL_SIZE,
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        generator.start();
+        return generator;
+    }
+    
+    /**
+     * Create a MineField for the current configuration.
+     * <p> A board which can be won without guessing is taken from those
+     * generated in the background, and its center is flipped for the
+     * player, since the layout is only the one checked when revealed from
+     * there. If none is ready an ordinary board is used when
+     * not waiting, so the event thread is never held up by a search.</p>
+     * @param wait whether to wait for a board which can be won without
+     * guessing.
+     * @return 
+     */
+    public MineField createMineField(boolean wait) {
+        MineField mf = buildMineField(this.config, this.generator, wait);
+        open(mf);
+        return mf;
+    }
+    
+    /**
+     * Build a MineField, without making any move in it.
+     * @param config
+     * @param generator source of boards which can be won without guessing,
+     * or null.
+     * @param wait whether to wait for a board from the generator.
+     * @return 
+     */
+    private static MineField buildMineField(GameConfig config, NoGuessGenerator generator,
+            boolean wait) {
+        if (generator == null) {
+            return new MineField(config);
+        }
+        GameConfig board = null;
+        try {
+            board = wait ? generator.take() : generator.poll();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IllegalStateException e) {
+            Utils.log(e.getMessage(), LoggerLevel.HIGH);
+        }
+        if (board == null) {
+            Utils.log("No board without guessing ready, using an ordinary one",
+                    LoggerLevel.MEDIUM);
+            return new MineField(config.withNoGuess(false));
+        }
+        return new MineField(board);
+    }
+    
+    /**
+     * Flip the center of a board which can be won without guessing. This is
+     * left until the board is shown, since it starts the clock.
+     * @param mf 
+     */
+    private static void open(MineField mf) {
+        if (mf.getConfig().isNoGuess()) {
+            int center = mf.getSize() - 1;
+            mf.flip(center, center);
+        }
+    }
+    
+    /**
+     * Start building the MineField for the next game in the background.
+     * There, waiting for a board which can be won without guessing holds
+     * nothing up.
+     */
+    private void prepareNext() {
+        GameConfig nextConfig = this.config;
+        NoGuessGenerator nextGenerator = this.generator;
+        this.factory.prepare(nextConfig, () -> buildMineField(nextConfig, nextGenerator, true));
+    }
     
     /**
      * Set this controller's corresponding view.
@@ -48,16 +194,37 @@ public class MouseController implements MouseListener, MouseMotionListener {
     }
     
     /**
-     * Reset the model (construct a new one), and fix up the observable/observer
-     * relationships.
+     * Reset the model, and fix up the observable/observer relationships.
+     * <p> The MineField built in the background during the last game is
+     * swapped in. Only if the configuration changed, or it isn't ready yet,
+     * is one built here instead, without waiting for a search. Either way
+     * the next one is then started.</p>
+     * @param config configuration for the new MineField, kept for later resets.
      */
-    private void reset() {
+    public void reset(GameConfig config) {
         Utils.log("Generating and linking a new MineField", LoggerLevel.MEDIUM);
-        this.minefield.deleteObservers();
-        this.minefield = new MineField(MineParameters.FIELD_SIZE);
+        if (!config.equals(this.config)) {
+            if (this.generator != null) {
+                this.generator.shutdown();
+            }
+            this.generator = startGenerator(config);
+        }
+        this.config = config;
+        MineField previous = this.minefield;
+        previous.deleteObservers();
+        MineField next = this.factory.take(config);
+        if (next == null) {
+            Utils.log("No MineField prepared, building one now", LoggerLevel.MEDIUM);
+            next = buildMineField(config, this.generator, false);
+        }
+        open(next);
+        this.minefield = next;
+        prepareNext();
+        this.board.setConfig(config);
         this.board.setInitialMineField(this.minefield);
         this.minefield.addObserver(this.board);
-        this.minefield.update();
+        Utils.log("Previous MineField suppressed " + previous.getSuppressedUpdates()
+                + " updates", LoggerLevel.LOW);
     }
     
     @Override
@@ -67,20 +234,34 @@ public class MouseController implements MouseListener, MouseMotionListener {
     @Override
     public void mousePressed(MouseEvent me) {
         Utils.log("Mouse pressed", LoggerLevel.LOW);
-        Point coords = this.board.getCoords(me.getX(), me.getY());
-        if (coords != null) {
+        if (me.getButton() == MouseEvent.BUTTON1) {
+            this.leftDown = true;
+        }
+        else if (me.getButton() == MouseEvent.BUTTON3) {
+            this.rightDown = true;
+        }
+        if (this.leftDown && this.rightDown) {
+            this.chording = true;
+        }
+        if (this.board.getCoords(me.getX(), me.getY(), this.coords)) {
             // Highlight the selected tile
-            Utils.log("Tile found: x " + coords.x + " y " + coords.y, LoggerLevel.LOW);
+            Utils.log("Tile found: x " + this.coords.x + " y " + this.coords.y, LoggerLevel.LOW);
+            if (this.chording) {
+                this.board.highlightFlip(this.coords.x, this.coords.y);
+                return;
+            }
             switch (me.getButton()) {
                 // Left click
                 case MouseEvent.BUTTON1:
-                    this.board.highlightFlip(coords.x, coords.y);
-                    this.minefield.update();
+                    this.board.highlightFlip(this.coords.x, this.coords.y);
+                    break;
+                // Middle click
+                case MouseEvent.BUTTON2:
+                    this.board.highlightFlip(this.coords.x, this.coords.y);
                     break;
                 // Right click
                 case MouseEvent.BUTTON3:
-                    this.board.highlightFlag(coords.x, coords.y);
-                    this.minefield.update();
+                    this.board.highlightFlag(this.coords.x, this.coords.y);
                     break;
             }
         }
@@ -89,49 +270,83 @@ public class MouseController implements MouseListener, MouseMotionListener {
     @Override
     public void mouseReleased(MouseEvent me) {
         Utils.log("Mouse released", LoggerLevel.LOW);
+        // Both buttons chord on the first release, and the second does nothing
+        boolean firstRelease = this.leftDown && this.rightDown;
+        if (me.getButton() == MouseEvent.BUTTON1) {
+            this.leftDown = false;
+        }
+        else if (me.getButton() == MouseEvent.BUTTON3) {
+            this.rightDown = false;
+        }
+        boolean chord = me.getButton() == MouseEvent.BUTTON2;
+        if (this.chording) {
+            chord = firstRelease;
+            if (!this.leftDown && !this.rightDown) {
+                this.chording = false;
+            }
+            if (!chord) {
+                return;
+            }
+        }
         // Turn mouse coords into coords corresponding to the model.
         this.board.removeHighlight();
-        this.minefield.update();
-        Point coords = this.board.getCoords(me.getX(), me.getY());
-        if (coords != null) {
-            // Mouse was released on a tile
-            switch (me.getButton()) {
-                // Left click
-                case MouseEvent.BUTTON1:
-                    this.minefield.flip(coords.x, coords.y);
-                    // Check if we lost, and handle
-                    switch (this.minefield.getState()) {
-                        case LOST:
-                            this.board.lostPopup();
-                            Utils.log("Game lost popup closed", LoggerLevel.LOW);
-                            this.reset();
+        if (this.board.getCoords(me.getX(), me.getY(), this.coords)) {
+            // Mouse was released on a tile, and everything it changes is
+            // sent to the view in one update
+            this.minefield.beginBatch();
+            try {
+                if (chord) {
+                    this.minefield.chord(this.coords.x, this.coords.y);
+                }
+                else {
+                    switch (me.getButton()) {
+                        // Left click
+                        case MouseEvent.BUTTON1:
+                            this.minefield.flip(this.coords.x, this.coords.y);
                             break;
-                        default:
-                            break;
-                    }
-                    break;
-                // Right click
-                case MouseEvent.BUTTON3:
-                    this.minefield.flag(coords.x, coords.y);
-                    switch (this.minefield.getState()) {
-                        // Check if we won and handle
-                        case WON:
-                            this.board.wonPopup();
-                            Utils.log("Game won popup closed", LoggerLevel.LOW);
-                            this.reset();
+                        // Right click
+                        case MouseEvent.BUTTON3:
+                            this.minefield.flag(this.coords.x, this.coords.y);
                             break;
                         default:
+                            // Nothing to do for the rest of the mouse buttons.
                             break;
                     }
-                    break;
-                default:
-                    // Nothing to do for the rest of the mouse buttons.
-                    break;
+                }
+            }
+            finally {
+                this.minefield.endBatch();
             }
-            
+            handleGameOver();
         }
         
     }
+    
+    /**
+     * Check if the game was lost or won, and if so tell the user and start a
+     * new game.
+     */
+    private void handleGameOver() {
+        switch (this.minefield.getState()) {
+            case LOST:
+                boolean undo = this.board.lostPopup(this.minefield.canUndo());
+                Utils.log("Game lost popup closed", LoggerLevel.LOW);
+                if (undo) {
+                    this.minefield.undo();
+                }
+                else {
+                    this.reset(this.config);
+                }
+                break;
+            case WON:
+                this.board.wonPopup();
+                Utils.log("Game won popup closed", LoggerLevel.LOW);
+                this.reset(this.config);
+                break;
+            default:
+                break;
+        }
+    }
 
     @Override
     public void mouseEntered(MouseEvent me) {
@@ -143,40 +358,82 @@ public class MouseController implements MouseListener, MouseMotionListener {
 
     @Override
     public void mouseDragged(MouseEvent me) {
-        Point coords = this.board.getCoords(me.getX(), me.getY());
-        if (coords != null) {
+        if (this.board.getCoords(me.getX(), me.getY(), this.coords)) {
             if (this.board.hasHighlight()) {
-                this.board.setHighlightPoint(coords.x, coords.y);
-                this.minefield.update();
+                this.board.setHighlightPoint(this.coords.x, this.coords.y);
             }
             else {
                 if (SwingUtilities.isLeftMouseButton(me)) {
-                    this.board.highlightFlip(coords.x, coords.y);
-                    this.minefield.update();
+                    this.board.highlightFlip(this.coords.x, this.coords.y);
                 }
                 else if (SwingUtilities.isRightMouseButton(me)) {
-                    this.board.highlightFlag(coords.x, coords.y);
-                    this.minefield.update();
+                    this.board.highlightFlag(this.coords.x, this.coords.y);
                 }
             }
         }
         else if (this.board.hasHighlight()) {
             this.board.removeHighlight();
-            this.minefield.update();
         }
     }
 
     @Override
     public void mouseMoved(MouseEvent me) {
-        Point coords = this.board.getCoords(me.getX(), me.getY());
-        if (coords != null) {
-            this.board.highlightHover(coords.x, coords.y);
-            this.minefield.update();
+        if (this.board.getCoords(me.getX(), me.getY(), this.coords)) {
+            this.board.highlightHover(this.coords.x, this.coords.y);
         }
         else if (this.board.hasHighlight()) {
             this.board.removeHighlight();
-            this.minefield.update();
         }
     }
+
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent mwe) {
+        // Rolling the wheel away from the user zooms in
+        this.board.zoom(-mwe.getWheelRotation(), mwe.getX(), mwe.getY());
+    }
+
+    @Override
+    public void keyTyped(KeyEvent ke) {
+    }
+
+    @Override
+    public void keyPressed(KeyEvent ke) {
+        if (ke.isControlDown()) {
+            // Ctrl+Z undoes the last move, and Ctrl+Y redoes it
+            switch (ke.getKeyCode()) {
+                case KeyEvent.VK_Z:
+                    this.minefield.undo();
+                    break;
+                case KeyEvent.VK_Y:
+                    this.minefield.redo();
+                    handleGameOver();
+                    break;
+                default:
+                    break;
+            }
+            return;
+        }
+        // Arrow keys move the view, so the map moves the opposite way
+        switch (ke.getKeyCode()) {
+            case KeyEvent.VK_LEFT:
+                this.board.pan(PAN_STEP, 0);
+                break;
+            case KeyEvent.VK_RIGHT:
+                this.board.pan(-PAN_STEP, 0);
+                break;
+            case KeyEvent.VK_UP:
+                this.board.pan(0, PAN_STEP);
+                break;
+            case KeyEvent.VK_DOWN:
+                this.board.pan(0, -PAN_STEP);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void keyReleased(KeyEvent ke) {
+    }
     
 }
@@ -0,0 +1,159 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.Arrays;
+
+/**
+ * The set of things which changed in a MineField since observers were last
+ * notified.
+ * <p> A MineField passes its ChangeSet as the argument of every notification,
+ * holding the coordinates of each tile which was flipped or had its flag
+ * toggled, and whether the time or the whole field changed. The same
+ * instance is cleared and reused once every observer has been notified, so
+ * observers must not keep a reference to it.</p>
+ * @author Nick Smith
+ */
+public class ChangeSet {
+
+    /**
+     * Initial capacity of the coordinate list.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Alternating x and y coordinates of the changed tiles.
+     */
+    private int[] coords;
+
+    /**
+     * Number of changed tiles.
+     */
+    private int size;
+
+    /**
+     * Whether the time shown, or the state it is shown in, has changed.
+     */
+    private boolean timer;
+
+    /**
+     * Whether everything should be treated as changed.
+     */
+    private boolean all;
+
+    /**
+     * Construct an empty ChangeSet.
+     */
+    public ChangeSet() {
+        this.coords = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Record that the tile at the given coordinates has changed.
+     * @param x
+     * @param y
+     */
+    public void add(int x, int y) {
+        if (this.all) {
+            // No need to remember tiles once everything has changed
+            return;
+        }
+        if (2 * this.size + 2 > this.coords.length) {
+            this.coords = Arrays.copyOf(this.coords, this.coords.length * 2);
+        }
+        this.coords[2 * this.size] = x;
+        this.coords[2 * this.size + 1] = y;
+        this.size++;
+    }
+
+    /**
+     * Record everything recorded in another ChangeSet.
+     * @param other
+     */
+    public void addAll(ChangeSet other) {
+        if (other.all) {
+            markAll();
+        }
+        for (int i = 0; i < other.size; i++) {
+            add(other.getX(i), other.getY(i));
+        }
+        this.timer |= other.timer;
+    }
+
+    /**
+     * Record that the time shown has changed.
+     */
+    public void markTimer() {
+        this.timer = true;
+    }
+
+    /**
+     * Record that everything has changed.
+     */
+    public void markAll() {
+        this.all = true;
+        this.size = 0;
+    }
+
+    /**
+     * Forget every recorded change.
+     */
+    public void clear() {
+        this.size = 0;
+        this.timer = false;
+        this.all = false;
+    }
+
+    /**
+     * Number of changed tiles.
+     * @return
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * X coordinate of the i-th changed tile.
+     * @param i
+     * @return
+     */
+    public int getX(int i) {
+        return this.coords[2 * i];
+    }
+
+    /**
+     * Y coordinate of the i-th changed tile.
+     * @param i
+     * @return
+     */
+    public int getY(int i) {
+        return this.coords[2 * i + 1];
+    }
+
+    /**
+     * Determine whether the time shown has changed.
+     * @return
+     */
+    public boolean isTimerChanged() {
+        return this.timer;
+    }
+
+    /**
+     * Determine whether everything should be treated as changed.
+     * @return
+     */
+    public boolean isAllChanged() {
+        return this.all;
+    }
+
+    /**
+     * Determine whether nothing has changed.
+     * @return
+     */
+    public boolean isEmpty() {
+        return this.size == 0 && !this.timer && !this.all;
+    }
+}
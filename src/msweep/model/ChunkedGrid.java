@@ -0,0 +1,568 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.Arrays;
+
+/**
+ * Lazily materialized storage for the tiles of a very large hexagonal
+ * MineField.
+ * <p> Mines are not placed up front. Whether a tile holds a mine is a pure
+ * function of the seed and its coordinates, so any tile can be read without
+ * storing anything. Only square chunks of {@code 64 x 64} coordinates which
+ * have been flipped or flagged in are kept in memory, and a chunk's
+ * surrounding mine counts are only worked out as they are asked for.</p>
+ * <p> Chunks are dropped again as soon as they go back to untouched (their
+ * last flag is removed), and a chunk whose every tile has been flipped is
+ * collapsed to a shared marker, along with any flags a cascade flipped. Memory therefore
+ * follows the area actually being played rather than the size of the
+ * field.</p>
+ * <p> Since mines are drawn independently per tile, the number of mines is
+ * only known on average. A safe zone of one tile and its neighbors may be
+ * cleared of mines, so the first tile revealed is never a mine.</p>
+ * @author Nick Smith
+ */
+public class ChunkedGrid implements TileStore {
+
+    /**
+     * Number of coordinate bits covered by a chunk along each axis.
+     */
+    private static final int CHUNK_BITS = 6;
+
+    /**
+     * Number of coordinates along each axis of a chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Mask for the coordinate within a chunk.
+     */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /* Tile bits, laid out as in HexGrid */
+
+    /**
+     * Bit set when the tile contains a mine.
+     */
+    private static final int MINE = HexGrid.MINE;
+
+    /**
+     * Bit set when the tile has been uncovered.
+     */
+    private static final int FLIPPED = HexGrid.FLIPPED;
+
+    /**
+     * Bit set when the tile has been flagged.
+     */
+    private static final int FLAGGED = HexGrid.FLAGGED;
+
+    /**
+     * Position of the three bit surrounding mine count.
+     */
+    private static final int COUNT_SHIFT = 3;
+
+    /**
+     * Mask for the surrounding mine count once shifted down.
+     */
+    private static final int COUNT_MASK = 0x07;
+
+    /**
+     * Bit set once the count of a stored tile has been worked out.
+     */
+    private static final int COUNTED = 0x40;
+
+    /**
+     * Key marking an empty slot of the chunk table. Real keys are never
+     * negative since coordinates never are.
+     */
+    private static final long EMPTY = -1L;
+
+    /**
+     * Initial number of slots in the chunk table, always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Shared marker for a chunk whose every tile has been flipped and which
+     * holds no flags.
+     */
+    private static final Chunk REVEALED = new Chunk();
+
+    /**
+     * Number of tiles from center to an edge (including the center).
+     */
+    private final int size;
+
+    /**
+     * Seed of the mine function.
+     */
+    private final long seed;
+
+    /**
+     * Tiles whose mixed hash falls below this value hold a mine.
+     */
+    private final long mineThreshold;
+
+    /**
+     * Whether {@link safeX} and {@link safeY} hold a safe zone.
+     */
+    private boolean hasSafeZone;
+
+    /**
+     * Center of the safe zone.
+     */
+    private int safeX;
+
+    /**
+     * Center of the safe zone.
+     */
+    private int safeY;
+
+    /**
+     * Keys of the chunk table, packing the chunk's x and y.
+     */
+    private long[] keys;
+
+    /**
+     * Values of the chunk table.
+     */
+    private Chunk[] chunks;
+
+    /**
+     * Number of used slots in the chunk table.
+     */
+    private int used;
+
+    /**
+     * Number of collapsed, fully revealed chunks in the table.
+     */
+    private int revealed;
+
+    /**
+     * Construct a grid with nothing flipped or flagged.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param seed seed of the mine function.
+     * @param density probability of any one tile holding a mine.
+     */
+    public ChunkedGrid(int size, long seed, double density) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least one");
+        }
+        if (density < 0.0 || density > 1.0) {
+            throw new IllegalArgumentException("Density must be between 0 and 1");
+        }
+        this.size = size;
+        this.seed = seed;
+        this.mineThreshold = (long) (density * (1L << 53));
+        this.keys = new long[INITIAL_CAPACITY];
+        this.chunks = new Chunk[INITIAL_CAPACITY];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Number of chunks currently held in memory, collapsed or not.
+     * @return
+     */
+    public int getLoadedChunkCount() {
+        return this.used;
+    }
+
+    /**
+     * Number of chunks held only as the collapsed fully revealed marker.
+     * @return
+     */
+    public int getRevealedChunkCount() {
+        return this.revealed;
+    }
+
+    /* Tile access */
+
+    @Override
+    public boolean hasMine(int x, int y) {
+        Chunk chunk = find(x, y);
+        if (chunk == null || chunk == REVEALED) {
+            return mineAt(x, y);
+        }
+        return (chunk.tiles[local(x, y)] & MINE) != 0;
+    }
+
+    @Override
+    public boolean isFlipped(int x, int y) {
+        Chunk chunk = find(x, y);
+        if (chunk == null) {
+            return false;
+        }
+        if (chunk == REVEALED) {
+            return true;
+        }
+        return (chunk.tiles[local(x, y)] & FLIPPED) != 0;
+    }
+
+    @Override
+    public boolean isFlagged(int x, int y) {
+        Chunk chunk = find(x, y);
+        if (chunk == null || chunk == REVEALED) {
+            return false;
+        }
+        return (chunk.tiles[local(x, y)] & FLAGGED) != 0;
+    }
+
+    @Override
+    public int getCount(int x, int y) {
+        Chunk chunk = find(x, y);
+        if (chunk == null || chunk == REVEALED) {
+            return countAt(x, y);
+        }
+        int i = local(x, y);
+        if ((chunk.tiles[i] & COUNTED) == 0) {
+            chunk.tiles[i] |= COUNTED | (countAt(x, y) << COUNT_SHIFT);
+        }
+        return (chunk.tiles[i] >> COUNT_SHIFT) & COUNT_MASK;
+    }
+
+    @Override
+    public void setFlipped(int x, int y) {
+        int slot = slotFor(x, y);
+        Chunk chunk = this.chunks[slot];
+        if (chunk == REVEALED) {
+            return;
+        }
+        int i = local(x, y);
+        if ((chunk.tiles[i] & FLIPPED) == 0) {
+            chunk.tiles[i] |= FLIPPED;
+            chunk.flipped++;
+            if ((chunk.tiles[i] & FLAGGED) != 0) {
+                // A cascade flipped it, and its flag can no longer be removed
+                chunk.flagged--;
+            }
+            if (chunk.flipped == chunk.inRange && chunk.flagged == 0) {
+                // Nothing left to remember but that it is all flipped
+                this.chunks[slot] = REVEALED;
+                this.revealed++;
+            }
+        }
+    }
+
+    @Override
+    public void toggleFlag(int x, int y) {
+        int slot = slotFor(x, y);
+        Chunk chunk = this.chunks[slot];
+        if (chunk == REVEALED) {
+            return;
+        }
+        int i = local(x, y);
+        if ((chunk.tiles[i] & FLIPPED) != 0) {
+            return;
+        }
+        chunk.tiles[i] ^= FLAGGED;
+        chunk.flagged += (chunk.tiles[i] & FLAGGED) != 0 ? 1 : -1;
+        if (chunk.flipped == 0 && chunk.flagged == 0) {
+            // Back to untouched, so it can be rebuilt from the seed
+            remove(slot);
+        }
+    }
+
+    /**
+     * Get the coordinates of every mine in the chunks held in memory, which
+     * between them cover every tile which has been played.
+     * @return array of alternating x and y coordinates.
+     */
+    public int[] getLoadedMines() {
+        int found = 0;
+        int[] mines = new int[64];
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            Chunk chunk = this.chunks[slot];
+            if (this.keys[slot] == EMPTY || chunk == REVEALED) {
+                continue;
+            }
+            int baseX = (int) (this.keys[slot] >>> 32) << CHUNK_BITS;
+            int baseY = (int) this.keys[slot] << CHUNK_BITS;
+            for (int i = 0; i < chunk.tiles.length; i++) {
+                if ((chunk.tiles[i] & MINE) != 0) {
+                    if (found + 2 > mines.length) {
+                        mines = Arrays.copyOf(mines, mines.length * 2);
+                    }
+                    mines[found++] = baseX + (i >> CHUNK_BITS);
+                    mines[found++] = baseY + (i & CHUNK_MASK);
+                }
+            }
+        }
+        return Arrays.copyOf(mines, found);
+    }
+
+    /**
+     * Clear the mines from the given tile and its neighbors, whether or not
+     * their chunks are in memory. Only one safe zone may be set.
+     * @param x
+     * @param y
+     */
+    public void setSafeZone(int x, int y) {
+        if (this.hasSafeZone) {
+            throw new IllegalStateException("The safe zone is already set");
+        }
+        this.hasSafeZone = true;
+        this.safeX = x;
+        this.safeY = y;
+        // Chunks already built from the seed keep mines and counts of their own
+        for (int i = -1; i < NEIGHBOR_DX.length; i++) {
+            int zx = i < 0 ? x : x + NEIGHBOR_DX[i];
+            int zy = i < 0 ? y : y + NEIGHBOR_DY[i];
+            if (!inRange(zx, zy)) {
+                continue;
+            }
+            clearBits(zx, zy, MINE | COUNTED | (COUNT_MASK << COUNT_SHIFT));
+            for (int n = 0; n < NEIGHBOR_DX.length; n++) {
+                int nx = zx + NEIGHBOR_DX[n];
+                int ny = zy + NEIGHBOR_DY[n];
+                if (inRange(nx, ny)) {
+                    clearBits(nx, ny, COUNTED | (COUNT_MASK << COUNT_SHIFT));
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear bits of a tile, if its chunk is in memory and not collapsed.
+     * @param x
+     * @param y
+     * @param bits
+     */
+    private void clearBits(int x, int y, int bits) {
+        Chunk chunk = find(x, y);
+        if (chunk != null && chunk != REVEALED) {
+            chunk.tiles[local(x, y)] &= ~bits;
+        }
+    }
+
+    /* Mine function */
+
+    /**
+     * Determine from the seed alone whether the given coordinates hold a
+     * mine, none being in the safe zone.
+     * @param x
+     * @param y
+     * @return
+     */
+    private boolean mineAt(int x, int y) {
+        if (this.hasSafeZone) {
+            int dx = x - this.safeX;
+            int dy = y - this.safeY;
+            if (Math.abs(dx) <= 1 && Math.abs(dy) <= 1 && Math.abs(dx - dy) <= 1) {
+                return false;
+            }
+        }
+        long h = mix(this.seed ^ (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL));
+        return (h >>> 11) < this.mineThreshold;
+    }
+
+    /**
+     * Work out the surrounding mine count from the seed alone.
+     * @param x
+     * @param y
+     * @return
+     */
+    private int countAt(int x, int y) {
+        int count = 0;
+        for (int n = 0; n < NEIGHBOR_DX.length; n++) {
+            int nx = x + NEIGHBOR_DX[n];
+            int ny = y + NEIGHBOR_DY[n];
+            if (inRange(nx, ny) && mineAt(nx, ny)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * SplitMix64 finalizer, spreading every input bit over the output.
+     * @param z
+     * @return
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /* Chunk table */
+
+    /**
+     * Index of the given coordinates within their chunk.
+     * @param x
+     * @param y
+     * @return
+     */
+    private static int local(int x, int y) {
+        return ((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK);
+    }
+
+    /**
+     * Key of the chunk holding the given coordinates.
+     * @param x
+     * @param y
+     * @return
+     */
+    private static long key(int x, int y) {
+        return ((long) (x >> CHUNK_BITS) << 32) | (y >> CHUNK_BITS);
+    }
+
+    /**
+     * Preferred slot of a key in the chunk table.
+     * @param key
+     * @return
+     */
+    private int home(long key) {
+        return (int) mix(key) & (this.keys.length - 1);
+    }
+
+    /**
+     * Find the chunk holding the given coordinates, without creating it.
+     * @param x
+     * @param y
+     * @return the chunk, or null if it is not in memory.
+     */
+    private Chunk find(int x, int y) {
+        long key = key(x, y);
+        int mask = this.keys.length - 1;
+        for (int slot = home(key); this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return this.chunks[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the slot of the chunk holding the given coordinates, building the
+     * chunk from the seed if it is not in memory.
+     * @param x
+     * @param y
+     * @return
+     */
+    private int slotFor(int x, int y) {
+        long key = key(x, y);
+        int mask = this.keys.length - 1;
+        int slot = home(key);
+        for (; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+        }
+        if ((this.used + 1) * 4 > this.keys.length * 3) {
+            grow();
+            return slotFor(x, y);
+        }
+        this.keys[slot] = key;
+        this.chunks[slot] = materialize(x & ~CHUNK_MASK, y & ~CHUNK_MASK);
+        this.used++;
+        return slot;
+    }
+
+    /**
+     * Build a chunk from the seed, with nothing flipped or flagged.
+     * @param baseX smallest x coordinate of the chunk.
+     * @param baseY smallest y coordinate of the chunk.
+     * @return
+     */
+    private Chunk materialize(int baseX, int baseY) {
+        Chunk chunk = new Chunk();
+        chunk.tiles = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        for (int i = 0; i < chunk.tiles.length; i++) {
+            int x = baseX + (i >> CHUNK_BITS);
+            int y = baseY + (i & CHUNK_MASK);
+            if (inRange(x, y)) {
+                chunk.inRange++;
+                if (mineAt(x, y)) {
+                    chunk.tiles[i] = MINE;
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Remove the chunk in the given slot, shifting back any later entries of
+     * its probe run so lookups stay correct.
+     * @param slot
+     */
+    private void remove(int slot) {
+        int mask = this.keys.length - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (this.keys[next] == EMPTY) {
+                break;
+            }
+            int want = home(this.keys[next]);
+            // Leave entries whose preferred slot lies after the hole
+            boolean between = hole <= next
+                    ? hole < want && want <= next
+                    : hole < want || want <= next;
+            if (!between) {
+                this.keys[hole] = this.keys[next];
+                this.chunks[hole] = this.chunks[next];
+                hole = next;
+            }
+        }
+        this.keys[hole] = EMPTY;
+        this.chunks[hole] = null;
+        this.used--;
+    }
+
+    /**
+     * Double the number of slots in the chunk table.
+     */
+    private void grow() {
+        long[] oldKeys = this.keys;
+        Chunk[] oldChunks = this.chunks;
+        this.keys = new long[oldKeys.length * 2];
+        this.chunks = new Chunk[oldKeys.length * 2];
+        Arrays.fill(this.keys, EMPTY);
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = home(oldKeys[i]);
+                while (this.keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.chunks[slot] = oldChunks[i];
+            }
+        }
+    }
+
+    /**
+     * A square block of tiles held in memory.
+     */
+    private static class Chunk {
+
+        /**
+         * Tile bits, indexed by {@link local}.
+         */
+        private byte[] tiles;
+
+        /**
+         * Number of tiles of this chunk inside the field.
+         */
+        private int inRange;
+
+        /**
+         * Number of flipped tiles.
+         */
+        private int flipped;
+
+        /**
+         * Number of flagged tiles which have not been flipped.
+         */
+        private int flagged;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Source of time for a {@link GameEngine}, so games can be timed against
+ * something other than the system clock.
+ * @author Nick Smith
+ */
+public interface Clock {
+    
+    /**
+     * The system's monotonic clock.
+     */
+    Clock SYSTEM = System::nanoTime;
+    
+    /**
+     * Current time in nanoseconds, measured from an arbitrary origin which
+     * must not change while a game is played.
+     * @return 
+     */
+    long nanoTime();
+}
@@ -0,0 +1,50 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Places mines with a partial Fisher-Yates shuffle over an array of every
+ * tile index.
+ * <p> Only the first {@code mineCount} positions are shuffled, so after the
+ * index array is filled placement takes time proportional to the number of
+ * mines. The index array costs four bytes per tile; see
+ * {@link ReservoirPlacement} for very large fields.</p>
+ * @author Nick Smith
+ */
+public class FisherYatesPlacement implements MinePlacement {
+    
+    /**
+     * Name of this strategy on the command line.
+     */
+    public static final String NAME = "shuffle";
+
+    @Override
+    public int[] place(int tileCount, int mineCount, SplittableRandom random) {
+        if (mineCount > tileCount) {
+            throw new IllegalStateException("Can't have more mines than tiles");
+        }
+        int[] indices = new int[tileCount];
+        for (int i = 0; i < tileCount; i++) {
+            indices[i] = i;
+        }
+        // Swap a random remaining tile into each of the first mineCount slots
+        for (int i = 0; i < mineCount; i++) {
+            int j = i + random.nextInt(tileCount - i);
+            int swap = indices[i];
+            indices[i] = indices[j];
+            indices[j] = swap;
+        }
+        return Arrays.copyOf(indices, mineCount);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
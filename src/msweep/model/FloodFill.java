@@ -0,0 +1,130 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Cascade engine which reveals a tile, and every tile reachable from it
+ * through zero count tiles.
+ * <p> Tiles are visited breadth first from an explicit queue of primitive
+ * coordinates rather than by recursion, so arbitrarily large empty regions
+ * can be revealed without growing the thread stack. The queue is kept between
+ * calls and only grows when a larger frontier is met.</p>
+ * <p> The revealed set is the same as the old recursive flip: the tile
+ * itself, and every unflipped neighbor of any revealed zero count tile
+ * (flagged or not).</p>
+ * @author Nick Smith
+ */
+public class FloodFill {
+
+    /**
+     * Initial capacity of the coordinate queue, always kept a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Ring buffer of queued x coordinates.
+     */
+    private int[] queueX;
+
+    /**
+     * Ring buffer of queued y coordinates.
+     */
+    private int[] queueY;
+
+    /**
+     * Index of the next queued coordinate.
+     */
+    private int head;
+
+    /**
+     * Number of queued coordinates.
+     */
+    private int length;
+
+    /**
+     * Construct a new FloodFill with an empty queue.
+     */
+    public FloodFill() {
+        this.queueX = new int[INITIAL_CAPACITY];
+        this.queueY = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Flip the tile at the given coordinates and cascade through zero count
+     * tiles.
+     * @param grid the grid to reveal tiles in.
+     * @param x
+     * @param y
+     * @param changes records each newly flipped tile, may be null.
+     * @return the number of tiles which were not flipped before this call.
+     */
+    public int reveal(TileStore grid, int x, int y, ChangeSet changes) {
+        int revealed = 0;
+        if (!grid.isFlipped(x, y)) {
+            grid.setFlipped(x, y);
+            revealed++;
+            if (changes != null) {
+                changes.add(x, y);
+            }
+        }
+        this.head = 0;
+        this.length = 0;
+        push(x, y);
+        while (this.length > 0) {
+            int cx = this.queueX[this.head];
+            int cy = this.queueY[this.head];
+            this.head = (this.head + 1) & (this.queueX.length - 1);
+            this.length--;
+            if (grid.getCount(cx, cy) != 0) {
+                continue;
+            }
+            for (int n = 0; n < TileStore.NEIGHBOR_DX.length; n++) {
+                int nx = cx + TileStore.NEIGHBOR_DX[n];
+                int ny = cy + TileStore.NEIGHBOR_DY[n];
+                if (grid.inRange(nx, ny) && !grid.isFlipped(nx, ny)) {
+                    grid.setFlipped(nx, ny);
+                    revealed++;
+                    if (changes != null) {
+                        changes.add(nx, ny);
+                    }
+                    push(nx, ny);
+                }
+            }
+        }
+        return revealed;
+    }
+
+    /**
+     * Add a coordinate to the back of the queue, growing it if full.
+     * @param x
+     * @param y
+     */
+    private void push(int x, int y) {
+        if (this.length == this.queueX.length) {
+            grow();
+        }
+        int tail = (this.head + this.length) & (this.queueX.length - 1);
+        this.queueX[tail] = x;
+        this.queueY[tail] = y;
+        this.length++;
+    }
+
+    /**
+     * Double the capacity of the queue, unwrapping it to start at zero.
+     */
+    private void grow() {
+        int capacity = this.queueX.length;
+        int[] newX = new int[capacity * 2];
+        int[] newY = new int[capacity * 2];
+        for (int i = 0; i < this.length; i++) {
+            newX[i] = this.queueX[(this.head + i) & (capacity - 1)];
+            newY[i] = this.queueY[(this.head + i) & (capacity - 1)];
+        }
+        this.queueX = newX;
+        this.queueY = newY;
+        this.head = 0;
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.Objects;
+
+/**
+ * Immutable description of the kind of game to play: how large the
+ * MineField is, how many mines it holds and how they are placed.
+ * <p> A chunked configuration describes a field stored in a
+ * {@link ChunkedGrid}. It is given a mine density rather than a mine count,
+ * may be far larger, and has no fixed number of mines.</p>
+ * @author Nick Smith
+ */
+public class GameConfig {
+
+    /**
+     * Number of tiles from center to an edge (including the center).
+     */
+    private final int size;
+
+    /**
+     * Number of mines placed in the MineField, unused when chunked.
+     */
+    private final int mineCount;
+
+    /**
+     * Fraction of tiles holding a mine.
+     */
+    private final double density;
+
+    /**
+     * Whether the MineField is built lazily in chunks.
+     */
+    private final boolean chunked;
+
+    /**
+     * Seed for mine placement, or null for a fresh random seed every game.
+     */
+    private final Long seed;
+
+    /**
+     * Strategy used to choose the tiles holding mines.
+     */
+    private final MinePlacement placement;
+
+    /**
+     * Rule deciding when a game has been won.
+     */
+    private final WinRule winRule;
+
+    /**
+     * Whether every game must be solvable from the center without guessing.
+     */
+    private final boolean noGuess;
+
+    /**
+     * Construct a configuration with an exact number of mines, placed by
+     * reservoir sampling with a fresh seed every game.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param mineCount number of mines to place.
+     */
+    public GameConfig(int size, int mineCount) {
+        this(size, mineCount, (double) mineCount / tileCount(size), false, null,
+                new ReservoirPlacement(), WinRule.FLAG_ALL_MINES, false);
+    }
+
+    /**
+     * Construct a configuration with every field given.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param mineCount number of mines to place, unused when chunked.
+     * @param density fraction of tiles holding a mine.
+     * @param chunked whether the MineField is built lazily in chunks.
+     * @param seed seed for mine placement, or null for a random seed per game.
+     * @param placement strategy used to place the mines.
+     * @param winRule rule deciding when a game has been won.
+     * @param noGuess whether games must be solvable without guessing.
+     */
+    private GameConfig(int size, int mineCount, double density, boolean chunked, Long seed,
+            MinePlacement placement, WinRule winRule, boolean noGuess) {
+        int maxSize = chunked ? MineParameters.MAX_CHUNKED_FIELD_SIZE : MineParameters.MAX_FIELD_SIZE;
+        if (size < MineParameters.MIN_FIELD_SIZE || size > maxSize) {
+            throw new IllegalArgumentException("Size must be between "
+                    + MineParameters.MIN_FIELD_SIZE + " and " + maxSize);
+        }
+        if (mineCount < 0 || mineCount > tileCount(size)) {
+            throw new IllegalArgumentException("Can't have more mines than tiles");
+        }
+        if (chunked && (density < MineParameters.MIN_CHUNKED_DENSITY || density > 1.0)) {
+            throw new IllegalArgumentException("Chunked density must be between "
+                    + MineParameters.MIN_CHUNKED_DENSITY + " and 1");
+        }
+        if (placement == null) {
+            throw new IllegalArgumentException("A mine placement strategy is required");
+        }
+        if (winRule == null) {
+            throw new IllegalArgumentException("A win rule is required");
+        }
+        if (chunked && noGuess) {
+            throw new IllegalArgumentException("Chunked fields can't be generated without guessing");
+        }
+        this.size = size;
+        this.mineCount = mineCount;
+        this.density = density;
+        this.chunked = chunked;
+        this.seed = seed;
+        this.placement = placement;
+        this.winRule = winRule;
+        this.noGuess = noGuess;
+    }
+
+    /**
+     * Copy this configuration with a fixed placement seed, so every game
+     * has the same layout.
+     * @param seed
+     * @return
+     */
+    public GameConfig withSeed(long seed) {
+        return new GameConfig(this.size, this.mineCount, this.density, this.chunked, seed,
+                this.placement, this.winRule, this.noGuess);
+    }
+
+    /**
+     * Copy this configuration with a different mine placement strategy.
+     * @param placement
+     * @return
+     */
+    public GameConfig withPlacement(MinePlacement placement) {
+        return new GameConfig(this.size, this.mineCount, this.density, this.chunked, this.seed,
+                placement, this.winRule, this.noGuess);
+    }
+
+    /**
+     * Copy this configuration with a different win rule.
+     * @param winRule
+     * @return
+     */
+    public GameConfig withWinRule(WinRule winRule) {
+        return new GameConfig(this.size, this.mineCount, this.density, this.chunked, this.seed,
+                this.placement, winRule, this.noGuess);
+    }
+
+    /**
+     * Copy this configuration, choosing whether every game must be solvable
+     * from the center without guessing.
+     * @param noGuess
+     * @return
+     */
+    public GameConfig withNoGuess(boolean noGuess) {
+        return new GameConfig(this.size, this.mineCount, this.density, this.chunked, this.seed,
+                this.placement, this.winRule, noGuess);
+    }
+
+    /**
+     * Construct a configuration whose mine count is a fraction of its tiles.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param density fraction of tiles holding a mine, in {@code [0, 1]}.
+     * @return
+     */
+    public static GameConfig withDensity(int size, double density) {
+        if (density < 0.0 || density > 1.0) {
+            throw new IllegalArgumentException("Density must be between 0 and 1");
+        }
+        return new GameConfig(size, (int) Math.round(density * tileCount(size)));
+    }
+
+    /**
+     * Construct a configuration for a lazily built, chunked MineField where
+     * each tile independently holds a mine with the given probability.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param density probability of a tile holding a mine.
+     * @return
+     */
+    public static GameConfig chunked(int size, double density) {
+        return new GameConfig(size, 0, density, true, null,
+                new ReservoirPlacement(), WinRule.FLAG_ALL_MINES, false);
+    }
+
+    /**
+     * The configuration used when nothing else is requested.
+     * @return
+     */
+    public static GameConfig defaults() {
+        return new GameConfig(MineParameters.DEFAULT_FIELD_SIZE,
+                MineParameters.DEFAULT_NUMBER_MINES);
+    }
+
+    /**
+     * Number of tiles in a hexagonal map of the given size.
+     * @param size
+     * @return
+     */
+    public static long tileCount(int size) {
+        return 3L * size * (size - 1) + 1;
+    }
+
+    /**
+     * Number of tiles from center to an edge (including the center).
+     * @return
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Number of mines placed in the MineField, only valid when not chunked.
+     * @return
+     */
+    public int getMineCount() {
+        if (this.chunked) {
+            throw new IllegalStateException("Chunked fields have no fixed mine count");
+        }
+        return this.mineCount;
+    }
+
+    /**
+     * Determine whether the MineField is built lazily in chunks.
+     * @return
+     */
+    public boolean isChunked() {
+        return this.chunked;
+    }
+
+    /**
+     * Determine whether a fixed placement seed has been given.
+     * @return
+     */
+    public boolean hasSeed() {
+        return this.seed != null;
+    }
+
+    /**
+     * The fixed placement seed, only valid when {@link hasSeed} is true.
+     * @return
+     */
+    public long getSeed() {
+        if (this.seed == null) {
+            throw new IllegalStateException("No seed has been set");
+        }
+        return this.seed;
+    }
+
+    /**
+     * Strategy used to choose the tiles holding mines.
+     * @return
+     */
+    public MinePlacement getPlacement() {
+        return this.placement;
+    }
+
+    /**
+     * Rule deciding when a game has been won.
+     * @return
+     */
+    public WinRule getWinRule() {
+        return this.winRule;
+    }
+
+    /**
+     * Determine whether every game must be solvable from the center without
+     * guessing.
+     * @return
+     */
+    public boolean isNoGuess() {
+        return this.noGuess;
+    }
+
+    /**
+     * Fraction of tiles which hold a mine.
+     * @return
+     */
+    public double getDensity() {
+        return this.density;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof GameConfig)) {
+            return false;
+        }
+        GameConfig other = (GameConfig) o;
+        return this.size == other.size && this.mineCount == other.mineCount
+                && this.density == other.density && this.chunked == other.chunked
+                && Objects.equals(this.seed, other.seed)
+                && this.placement.getName().equals(other.placement.getName())
+                && this.winRule == other.winRule && this.noGuess == other.noGuess;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.size, this.mineCount, this.density, this.chunked, this.seed,
+                this.placement.getName(), this.winRule, this.noGuess);
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + this.size
+                + (this.chunked ? " density=" + this.density + " chunked" : " mines=" + this.mineCount)
+                + (this.seed == null ? "" : " seed=" + this.seed)
+                + " placement=" + this.placement.getName()
+                + " win=" + this.winRule.getName()
+                + (this.noGuess ? " noguess" : "");
+    }
+
+    /**
+     * Enumeration of the rules by which a game can be won.
+     * <ul>
+     * 
+     * <li>{@code FLAG_ALL_MINES} is won once every tile containing a mine
+     * has been flagged. A field with no mines has nothing to flag, so it is
+     * won once every tile has been flipped instead.</li>
+     * 
+     * <li>{@code REVEAL_ALL_SAFE} is won once every tile without a mine has
+     * been flipped.</li>
+     * 
+     * <li>{@code EITHER} is won as soon as either of the above is met.</li>
+     * </ul>
+     */
+    public enum WinRule {
+        FLAG_ALL_MINES("flags"),
+        REVEAL_ALL_SAFE("reveal"),
+        EITHER("either");
+
+        private final String name;
+
+        private WinRule(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Short name of this rule, as used on the command line.
+         * @return
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Find the rule with the given command line name.
+         * @param name
+         * @return
+         */
+        public static WinRule fromName(String name) {
+            for (WinRule rule: values()) {
+                if (rule.name.equals(name)) {
+                    return rule;
+                }
+            }
+            throw new IllegalArgumentException("Unknown win rule: " + name);
+        }
+    }
+}
@@ -0,0 +1,997 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The rules and state of a single game, independent of any user interface.
+ * <p> An engine holds the map and its counters, and applies moves to them:
+ * {@link reveal}, {@link toggleFlag} and {@link chord}. Each move returns a
+ * {@link MoveResult}, and when a {@link GameListener} is given it is also
+ * passed the {@link ChangeSet} of tiles the move changed. Time is read from
+ * an injected {@link Clock}, starting at the first move and stopping when
+ * the game ends.</p>
+ * <p> Mines are only placed by the first {@link reveal}, away from the
+ * tile revealed and its neighbors, so the first reveal is always safe and
+ * opens a region where there is room. A layout is reproduced by the same
+ * seed and the same first reveal.</p>
+ * <p> Once {@link startHistory} is called on a hexagonal game, the tiles
+ * each move changes are kept as a {@link TileDelta}, so moves can be undone
+ * and redone in time proportional to what they changed.</p>
+ * <p> Nothing here depends on AWT or Swing, so engines can be created and
+ * played anywhere, and many may be played at once as long as each is only
+ * used by one thread at a time. {@link MineField} adapts an engine for the
+ * Swing view.</p>
+ * @author Nick Smith
+ */
+public class GameEngine {
+    
+    /**
+     * {@link getTileDisplay} value of a tile which has not been flipped.
+     */
+    public static final int DISPLAY_HIDDEN = -1;
+    
+    /**
+     * {@link getTileDisplay} value of a flagged tile.
+     */
+    public static final int DISPLAY_FLAGGED = -2;
+    
+    /**
+     * {@link getTileDisplay} value of a flipped tile containing a mine.
+     */
+    public static final int DISPLAY_MINE = -3;
+    
+    /**
+     * Number of the most recent moves which can always be undone. Older
+     * moves are dropped from the history once twice this many are kept.
+     */
+    public static final int UNDO_LIMIT = 1000;
+    
+    /**
+     * Configuration this game was built from.
+     * <p> Its size is the size of the hexagonal map. One indicates a single
+     * hexagon, two indicates a single hexagon surrounded by a ring of
+     * hexagons, three indicates two rings, etc. </p>
+     */
+    private final GameConfig config;
+    
+    /**
+     * The hexagon map is represented by a {@link TileStore}: a
+     * {@link HexGrid} storing every tile in a flat array, or a
+     * {@link ChunkedGrid} building regions of the map only once played.
+     */
+    private final TileStore grid;
+    
+    /**
+     * Cascade engine used to reveal tiles and the empty regions around them.
+     */
+    private final FloodFill cascade;
+    
+    /**
+     * Source of time for timing the game.
+     */
+    private final Clock clock;
+    
+    /**
+     * Receiver of the changes made by each move, or null if nobody listens.
+     */
+    private final GameListener listener;
+    
+    /**
+     * Changes made by the current move, only recorded when there is a
+     * listener or a history.
+     */
+    private ChangeSet changes;
+    
+    /**
+     * Seed the mine layout is generated from, either fixed by the config or
+     * chosen randomly for this game.
+     */
+    private final long seed;
+    
+    /**
+     * Flag for whether the mines have been placed by the first reveal.
+     */
+    private boolean placed;
+    
+    /**
+     * Number of flagged tiles which contain a mine.
+     */
+    private int correctFlags;
+    
+    /**
+     * Number of flagged tiles which do not contain a mine.
+     */
+    private int wrongFlags;
+    
+    /**
+     * Number of tiles without a mine which have not been flipped, or -1 when
+     * chunked.
+     */
+    private int hiddenSafeTiles;
+    
+    /**
+     * Current state of the game.
+     */
+    private GameState gameState;
+    
+    /**
+     * Clock time of the first move.
+     */
+    private long startTime;
+    
+    /**
+     * Clock time the game ended.
+     */
+    private long endTime;
+    
+    /**
+     * Flag for whether the first move has been made.
+     */
+    private boolean started;
+    
+    /**
+     * Clock time the current move was made.
+     */
+    private long moveTime;
+    
+    /**
+     * Clock time of the first move, which the journal times moves from.
+     * Unlike {@link startTime} it is never moved by undoing.
+     */
+    private long firstMoveTime;
+    
+    /**
+     * Record of every move made, or null if none is kept.
+     */
+    private MoveJournal journal;
+    
+    /**
+     * Flag for whether moves are kept so they can be undone.
+     */
+    private boolean undoable;
+    
+    /**
+     * Moves which can be undone, the most recent on top, or null.
+     */
+    private TileDelta undoStack;
+    
+    /**
+     * Moves undone which can be redone, the most recently undone on top, or
+     * null.
+     */
+    private TileDelta redoStack;
+    
+    /**
+     * Whether the mines were placed before the current move.
+     */
+    private boolean placedBefore;
+    
+    /**
+     * Counters before the current move, kept for its delta.
+     */
+    private int correctBefore;
+    private int wrongBefore;
+    private int hiddenBefore;
+    
+    /**
+     * Construct a new game timed by the system clock, with no listener.
+     * @param config size and number of mines for the new game.
+     */
+    public GameEngine(GameConfig config) {
+        this(config, Clock.SYSTEM, null);
+    }
+    
+    /**
+     * Construct a new game.
+     * @param config size and number of mines for the new game.
+     * @param clock source of time for timing the game.
+     * @param listener receiver of the changes made by each move, or null.
+     */
+    public GameEngine(GameConfig config, Clock clock, GameListener listener) {
+        this(config, null, clock, listener);
+    }
+    
+    /**
+     * Construct a new game on the given tiles.
+     * @param config size and number of mines for the new game.
+     * @param tiles empty tiles of the config's size, or null to allocate them.
+     * @param clock source of time for timing the game.
+     * @param listener receiver of the changes made by each move, or null.
+     */
+    GameEngine(GameConfig config, HexGrid tiles, Clock clock, GameListener listener) {
+        if (clock == null) {
+            throw new IllegalArgumentException("A clock is required");
+        }
+        this.config = config;
+        this.clock = clock;
+        this.listener = listener;
+        this.changes = listener == null ? null : new ChangeSet();
+        this.seed = config.hasSeed() ? config.getSeed() : new SplittableRandom().nextLong();
+        if (tiles != null) {
+            this.grid = tiles;
+        }
+        else {
+            this.grid = config.isChunked()
+                    ? new ChunkedGrid(config.getSize(), this.seed, config.getDensity())
+                    : new HexGrid(config.getSize());
+        }
+        this.cascade = new FloodFill();
+        // Mines are placed by the first reveal, so none are known yet
+        this.hiddenSafeTiles = config.isChunked()
+                ? -1 : (int) GameConfig.tileCount(config.getSize()) - config.getMineCount();
+        this.gameState = GameState.IN_PROGRESS;
+        stored();
+    }
+    
+    /**
+     * Construct a game restored from its saved tiles and counters, as read
+     * by {@link GameSnapshot} or reopened by {@link MappedGrid}.
+     * @param config configuration with the game's seed fixed.
+     * @param grid the saved tiles, their mines already counted.
+     * @param placed whether the mines had been placed.
+     * @param started whether the first move had been made.
+     * @param state
+     * @param elapsed milliseconds played.
+     * @param correctFlags
+     * @param wrongFlags
+     * @param hiddenSafeTiles
+     * @param clock source of time for timing the rest of the game.
+     * @param listener receiver of the changes made by each move, or null.
+     */
+    GameEngine(GameConfig config, HexGrid grid, boolean placed, boolean started,
+            GameState state, long elapsed, int correctFlags, int wrongFlags,
+            int hiddenSafeTiles, Clock clock, GameListener listener) {
+        if (clock == null) {
+            throw new IllegalArgumentException("A clock is required");
+        }
+        this.config = config;
+        this.clock = clock;
+        this.listener = listener;
+        this.changes = listener == null ? null : new ChangeSet();
+        this.seed = config.getSeed();
+        this.grid = grid;
+        this.cascade = new FloodFill();
+        this.placed = placed;
+        this.started = started;
+        this.gameState = state;
+        this.correctFlags = correctFlags;
+        this.wrongFlags = wrongFlags;
+        this.hiddenSafeTiles = hiddenSafeTiles;
+        // Carry on timing from where the game was saved
+        long now = clock.nanoTime();
+        this.startTime = now - elapsed * 1000000L;
+        this.endTime = now;
+        this.firstMoveTime = this.startTime;
+    }
+    
+    /**
+     * Flip the tile at the given location, and the empty region around it.
+     * Flagged tiles can't be flipped until the flag is removed.
+     * @param x
+     * @param y
+     * @return 
+     */
+    public MoveResult reveal(int x, int y) {
+        if (!startMove(Move.REVEAL, x, y) || this.grid.isFlipped(x, y)
+                || this.grid.isFlagged(x, y)) {
+            return unchanged();
+        }
+        if (!this.placed) {
+            placeMines(x, y);
+        }
+        if (this.grid.hasMine(x, y)) {
+            // Game over
+            return finish(MoveResult.Outcome.EXPLODED, mineFlipped());
+        }
+        // Everything a safe tile cascades into is safe too
+        int revealed = this.cascade.reveal(this.grid, x, y, this.changes);
+        if (!this.config.isChunked()) {
+            this.hiddenSafeTiles -= revealed;
+        }
+        checkAndHandleWin();
+        return finish(MoveResult.Outcome.REVEALED, revealed);
+    }
+    
+    /**
+     * Toggle the flag for the tile at the given location. Flipped tiles can't
+     * be flagged.
+     * @param x
+     * @param y
+     * @return 
+     */
+    public MoveResult toggleFlag(int x, int y) {
+        if (!startMove(Move.FLAG, x, y) || this.grid.isFlipped(x, y)) {
+            return unchanged();
+        }
+        this.grid.toggleFlag(x, y);
+        if (this.changes != null) {
+            this.changes.add(x, y);
+        }
+        boolean flagged = this.grid.isFlagged(x, y);
+        int change = flagged ? 1 : -1;
+        if (this.grid.hasMine(x, y)) {
+            this.correctFlags += change;
+        }
+        else {
+            this.wrongFlags += change;
+        }
+        checkAndHandleWin();
+        return finish(flagged ? MoveResult.Outcome.FLAGGED : MoveResult.Outcome.UNFLAGGED, 0);
+    }
+    
+    /**
+     * Flip every hidden, unflagged neighbor of a flipped tile whose count is
+     * matched by the flags around it. If a flag was wrong, a mine is flipped
+     * and the game is lost.
+     * @param x
+     * @param y
+     * @return 
+     */
+    public MoveResult chord(int x, int y) {
+        if (!startMove(Move.CHORD, x, y) || !this.grid.isFlipped(x, y)
+                || this.grid.hasMine(x, y)) {
+            return unchanged();
+        }
+        int flags = 0;
+        int hidden = 0;
+        for (int i = 0; i < TileStore.NEIGHBOR_DX.length; i++) {
+            int nx = x + TileStore.NEIGHBOR_DX[i];
+            int ny = y + TileStore.NEIGHBOR_DY[i];
+            if (this.grid.inRange(nx, ny) && !this.grid.isFlipped(nx, ny)) {
+                if (this.grid.isFlagged(nx, ny)) {
+                    flags++;
+                }
+                else {
+                    hidden++;
+                }
+            }
+        }
+        if (hidden == 0 || flags != this.grid.getCount(x, y)) {
+            return unchanged();
+        }
+        int revealed = 0;
+        boolean exploded = false;
+        for (int i = 0; i < TileStore.NEIGHBOR_DX.length; i++) {
+            int nx = x + TileStore.NEIGHBOR_DX[i];
+            int ny = y + TileStore.NEIGHBOR_DY[i];
+            if (!this.grid.inRange(nx, ny) || this.grid.isFlipped(nx, ny)
+                    || this.grid.isFlagged(nx, ny)) {
+                continue;
+            }
+            if (this.grid.hasMine(nx, ny)) {
+                exploded = true;
+            }
+            else {
+                int cascaded = this.cascade.reveal(this.grid, nx, ny, this.changes);
+                if (!this.config.isChunked()) {
+                    this.hiddenSafeTiles -= cascaded;
+                }
+                revealed += cascaded;
+            }
+        }
+        if (exploded) {
+            return finish(MoveResult.Outcome.EXPLODED, revealed + mineFlipped());
+        }
+        checkAndHandleWin();
+        return finish(MoveResult.Outcome.REVEALED, revealed);
+    }
+    
+    /**
+     * Check a move's coordinates, start the clock on the first move, and
+     * record the move in the journal if there is one.
+     * @param move
+     * @param x
+     * @param y
+     * @return whether the game is still in progress.
+     */
+    private boolean startMove(Move move, int x, int y) {
+        if (!this.grid.inRange(x, y)) {
+            // Moves should only be made when the coords are in range
+            throw new IllegalArgumentException("Coordinate out of range");
+        }
+        if (this.gameState != GameState.IN_PROGRESS) {
+            return false;
+        }
+        this.moveTime = this.clock.nanoTime();
+        if (!this.started) {
+            this.started = true;
+            this.startTime = this.moveTime;
+            this.firstMoveTime = this.moveTime;
+            if (this.changes != null) {
+                this.changes.markTimer();
+            }
+        }
+        if (this.journal != null) {
+            this.journal.append(move, x, y, journalTime());
+        }
+        if (this.undoable) {
+            this.placedBefore = this.placed;
+            this.correctBefore = this.correctFlags;
+            this.wrongBefore = this.wrongFlags;
+            this.hiddenBefore = this.hiddenSafeTiles;
+        }
+        return true;
+    }
+    
+    /**
+     * Result of a move which had no effect on the map. The listener is
+     * still told if the move started the clock.
+     * @return 
+     */
+    private MoveResult unchanged() {
+        stored();
+        if (this.listener != null && !this.changes.isEmpty()) {
+            this.listener.gameChanged(this, this.changes);
+        }
+        if (this.changes != null) {
+            this.changes.clear();
+        }
+        return new MoveResult(MoveResult.Outcome.UNCHANGED, 0, this.gameState);
+    }
+    
+    /**
+     * Keep the move's changes so it can be undone, pass them to the
+     * listener, and build its result.
+     * @param outcome
+     * @param revealed
+     * @return 
+     */
+    private MoveResult finish(MoveResult.Outcome outcome, int revealed) {
+        // Nothing before the mines are placed can be undone, nor the reveal placing them
+        if (this.undoable && this.placedBefore) {
+            boolean flag = outcome == MoveResult.Outcome.FLAGGED
+                    || outcome == MoveResult.Outcome.UNFLAGGED;
+            this.undoStack = new TileDelta((HexGrid) this.grid, this.changes,
+                    flag ? HexGrid.FLAGGED : HexGrid.FLIPPED, this.correctBefore,
+                    this.wrongBefore, this.hiddenBefore, this, elapsedAt(this.moveTime),
+                    this.undoStack);
+            if (this.undoStack.getDepth() > 2 * UNDO_LIMIT) {
+                // Dropping a batch at once keeps trimming to a copy every UNDO_LIMIT moves
+                this.undoStack = this.undoStack.trim(UNDO_LIMIT);
+            }
+            this.redoStack = null;
+        }
+        return report(outcome, revealed);
+    }
+    
+    /**
+     * Pass the changes made to the listener, and build the result.
+     * @param outcome
+     * @param revealed
+     * @return 
+     */
+    private MoveResult report(MoveResult.Outcome outcome, int revealed) {
+        stored();
+        if (this.listener != null) {
+            this.listener.gameChanged(this, this.changes);
+        }
+        if (this.changes != null) {
+            this.changes.clear();
+        }
+        return new MoveResult(outcome, revealed, this.gameState);
+    }
+    
+    /**
+     * Write the state and counters alongside the tiles, for tiles kept in a
+     * file so the game can be reopened.
+     */
+    private void stored() {
+        if (this.grid instanceof MappedGrid) {
+            ((MappedGrid) this.grid).store(this);
+        }
+    }
+    
+    /**
+     * Checks the counters against the configured win rule, and sets the state
+     * to WON if it is met. Chunked fields are endless and can't be won.
+     */
+    private void checkAndHandleWin() {
+        if (this.config.isChunked()) {
+            return;
+        }
+        boolean allRevealed = this.hiddenSafeTiles == 0;
+        // With no mines there is nothing to flag, so the field must be cleared
+        int mines = this.config.getMineCount();
+        boolean allFlagged = mines > 0 ? this.correctFlags == mines : allRevealed;
+        boolean won;
+        switch (this.config.getWinRule()) {
+            case FLAG_ALL_MINES:
+                won = allFlagged;
+                break;
+            case REVEAL_ALL_SAFE:
+                won = allRevealed;
+                break;
+            case EITHER:
+                won = allFlagged || allRevealed;
+                break;
+            default:
+                throw new IllegalStateException("Invalid win rule found");
+        }
+        if (won) {
+            // All mines have been cleared; stop the clock and change state.
+            end(GameState.WON);
+        }
+    }
+    
+    /**
+     * Handles a mine tile being flipped: every mine is shown and the state
+     * is set to LOST.
+     * @return number of tiles flipped.
+     */
+    private int mineFlipped() {
+        int total = 0;
+        if (this.config.isChunked()) {
+            // Show mine locations, only those in played regions
+            int[] mines = ((ChunkedGrid) this.grid).getLoadedMines();
+            for (int i = 0; i < mines.length; i += 2) {
+                total += this.cascade.reveal(this.grid, mines[i], mines[i + 1], this.changes);
+            }
+        }
+        else {
+            // Mines are found by a scan, so no list of them is kept
+            for (int x = 0; x < this.grid.getWidth(); x++) {
+                int max = this.grid.rowMax(x);
+                for (int y = this.grid.rowMin(x); y <= max; y++) {
+                    if (this.grid.hasMine(x, y)) {
+                        total += mineRevealed(x, y);
+                    }
+                }
+            }
+        }
+        end(GameState.LOST);
+        return total;
+    }
+    
+    /**
+     * Flip a mine, and the region around it if it has no mines around it.
+     * @param x
+     * @param y
+     * @return number of tiles flipped.
+     */
+    private int mineRevealed(int x, int y) {
+        // A zero count mine cascades into safe tiles as well as itself
+        int minesRevealed = this.grid.isFlipped(x, y) ? 0 : 1;
+        int revealed = this.cascade.reveal(this.grid, x, y, this.changes);
+        this.hiddenSafeTiles -= revealed - minesRevealed;
+        return revealed;
+    }
+    
+    /**
+     * Stop the clock and move to a final state.
+     * @param state 
+     */
+    private void end(GameState state) {
+        // The game ends when the move was made, as the journal records it
+        this.endTime = this.moveTime;
+        this.gameState = state;
+        if (this.changes != null) {
+            this.changes.markTimer();
+        }
+    }
+    
+    /**
+     * Place the mines away from the first tile revealed and its neighbors.
+     * Flags made before then were all counted as wrong, so the ones on mines
+     * are moved over to the correct count.
+     * @param x
+     * @param y
+     */
+    private void placeMines(int x, int y) {
+        this.placed = true;
+        if (this.config.isChunked()) {
+            ChunkedGrid chunkedGrid = (ChunkedGrid) this.grid;
+            // Flags were counted against the seed's mines, some now cleared
+            for (int i = -1; i < TileStore.NEIGHBOR_DX.length; i++) {
+                int nx = i < 0 ? x : x + TileStore.NEIGHBOR_DX[i];
+                int ny = i < 0 ? y : y + TileStore.NEIGHBOR_DY[i];
+                if (chunkedGrid.inRange(nx, ny) && chunkedGrid.isFlagged(nx, ny)
+                        && chunkedGrid.hasMine(nx, ny)) {
+                    this.correctFlags--;
+                    this.wrongFlags++;
+                }
+            }
+            chunkedGrid.setSafeZone(x, y);
+            return;
+        }
+        HexGrid hexGrid = (HexGrid) this.grid;
+        addMines(hexGrid, safeZone(hexGrid, x, y));
+    }
+    
+    /**
+     * Find the indices of the tiles to keep free of mines around the first
+     * tile revealed: the tile and its neighbors if there is room for every
+     * mine outside them, otherwise just the tile if there is room for that.
+     * @param hexGrid this game's grid.
+     * @param x
+     * @param y
+     * @return sorted tile indices.
+     */
+    private int[] safeZone(HexGrid hexGrid, int x, int y) {
+        int free = hexGrid.getTileCount() - this.config.getMineCount();
+        int[] zone = new int[TileStore.NEIGHBOR_DX.length + 1];
+        int found = 0;
+        if (free > 0) {
+            zone[found++] = hexGrid.index(x, y);
+        }
+        for (int i = 0; i < TileStore.NEIGHBOR_DX.length; i++) {
+            int nx = x + TileStore.NEIGHBOR_DX[i];
+            int ny = y + TileStore.NEIGHBOR_DY[i];
+            if (hexGrid.inRange(nx, ny)) {
+                zone[found++] = hexGrid.index(nx, ny);
+            }
+        }
+        if (found > free) {
+            found = Math.min(free, 1);
+        }
+        zone = Arrays.copyOf(zone, found);
+        Arrays.sort(zone);
+        return zone;
+    }
+    
+    /**
+     * Add mines to random tiles chosen by the configured placement strategy,
+     * seeded from this game's seed.
+     * <p> The strategy chooses among the tiles outside the safe zone, which
+     * are then mapped back to grid indices by skipping over the zone. Flags
+     * already on the chosen tiles are moved over to the correct count.</p>
+     * @param hexGrid this game's grid.
+     * @param zone sorted indices of the tiles to keep free of mines.
+     */
+    private void addMines(HexGrid hexGrid, int[] zone) {
+        int[] indices = this.config.getPlacement().place(
+                hexGrid.getTileCount() - zone.length,
+                this.config.getMineCount(),
+                new SplittableRandom(this.seed));
+        for (int i = 0; i < indices.length; i++) {
+            int index = indices[i];
+            for (int excluded: zone) {
+                if (excluded <= index) {
+                    index++;
+                }
+            }
+            int x = hexGrid.xOf(index);
+            int y = hexGrid.yOf(index);
+            hexGrid.addMine(x, y);
+            if (hexGrid.isFlagged(x, y)) {
+                this.correctFlags++;
+                this.wrongFlags--;
+            }
+        }
+    }
+    
+    /**
+     * Start recording every move made into a new journal, from which the
+     * game can be replayed, see {@link Replay}.
+     * @return the journal.
+     */
+    public MoveJournal startJournal() {
+        if (this.started) {
+            throw new IllegalStateException("Moves have already been made");
+        }
+        this.journal = new MoveJournal(this.config.withSeed(this.seed));
+        return this.journal;
+    }
+    
+    /**
+     * Get the journal of moves made, if one was started.
+     * @return the journal, or null.
+     */
+    public MoveJournal getJournal() {
+        return this.journal;
+    }
+    
+    /**
+     * Milliseconds from the first move to the current one, as the journal
+     * times moves.
+     * @return 
+     */
+    private long journalTime() {
+        return (this.moveTime - this.firstMoveTime) / 1000000L;
+    }
+    
+    /**
+     * Start keeping the changes made by each move from now on, so they can
+     * be undone. Moves made before the mines are placed, and the reveal
+     * placing them, are not kept, and only the last {@link UNDO_LIMIT} are
+     * sure to be.
+     */
+    public void startHistory() {
+        if (this.config.isChunked()) {
+            throw new IllegalStateException("Moves on chunked fields can't be undone");
+        }
+        this.undoable = true;
+        if (this.changes == null) {
+            this.changes = new ChangeSet();
+        }
+    }
+    
+    /**
+     * Undo the last move kept which hasn't been undone. The tiles, counters
+     * and state go back to how they were before it, and the clock goes back
+     * to when it was made and runs on from there. A lost game can be carried
+     * on by undoing the move which lost it.
+     * @return the result, UNCHANGED if there was nothing to undo.
+     */
+    public MoveResult undo() {
+        TileDelta delta = this.undoStack;
+        if (delta == null) {
+            return new MoveResult(MoveResult.Outcome.UNCHANGED, 0, this.gameState);
+        }
+        startHistoryMove(Move.UNDO);
+        delta.toggle((HexGrid) this.grid, this.changes);
+        this.correctFlags = delta.getCorrectBefore();
+        this.wrongFlags = delta.getWrongBefore();
+        this.hiddenSafeTiles = delta.getHiddenBefore();
+        this.gameState = GameState.IN_PROGRESS;
+        resumeAt(delta.getElapsed());
+        this.undoStack = delta.getNext();
+        this.redoStack = delta.onto(this.redoStack);
+        return report(MoveResult.Outcome.UNDONE, 0);
+    }
+    
+    /**
+     * Redo the last move undone, as long as no other move was made since.
+     * The tiles, counters and state go back to how they were after it, and
+     * the clock to when it was made.
+     * @return the result, UNCHANGED if there was nothing to redo.
+     */
+    public MoveResult redo() {
+        TileDelta delta = this.redoStack;
+        if (delta == null) {
+            return new MoveResult(MoveResult.Outcome.UNCHANGED, 0, this.gameState);
+        }
+        startHistoryMove(Move.REDO);
+        delta.toggle((HexGrid) this.grid, this.changes);
+        this.correctFlags = delta.getCorrectAfter();
+        this.wrongFlags = delta.getWrongAfter();
+        this.hiddenSafeTiles = delta.getHiddenAfter();
+        this.gameState = delta.getState();
+        resumeAt(delta.getElapsed());
+        this.redoStack = delta.getNext();
+        this.undoStack = delta.onto(this.undoStack);
+        return report(MoveResult.Outcome.REDONE, 0);
+    }
+    
+    /**
+     * Note the time of an undo or redo, and record it in the journal if
+     * there is one. These can be made after the game has ended.
+     * @param move
+     */
+    private void startHistoryMove(Move move) {
+        this.moveTime = this.clock.nanoTime();
+        if (this.journal != null) {
+            this.journal.append(move, journalTime());
+        }
+        this.changes.markTimer();
+    }
+    
+    /**
+     * Set the clock so the time played is the given time as of the current
+     * move, running on from there if the game is in progress.
+     * <p> The clock is moved by whole milliseconds of the journal's time, so
+     * a replay of the journal times the rest of the game exactly as it was
+     * played.</p>
+     * @param elapsed milliseconds played.
+     */
+    private void resumeAt(long elapsed) {
+        this.startTime = this.firstMoveTime + (journalTime() - elapsed) * 1000000L;
+        this.endTime = this.moveTime;
+    }
+    
+    /**
+     * Time played as of the given clock time, while the game is in progress.
+     * @param time
+     * @return milliseconds played.
+     */
+    private long elapsedAt(long time) {
+        return (time - this.startTime) / 1000000L;
+    }
+    
+    /**
+     * Determine whether there is a move which can be undone.
+     * @return 
+     */
+    public boolean canUndo() {
+        return this.undoStack != null;
+    }
+    
+    /**
+     * Determine whether there is an undone move which can be redone.
+     * @return 
+     */
+    public boolean canRedo() {
+        return this.redoStack != null;
+    }
+    
+    /**
+     * Get the top of the undo stack, for a replay to checkpoint.
+     * @return 
+     */
+    TileDelta getUndoStack() {
+        return this.undoStack;
+    }
+    
+    /**
+     * Get the top of the redo stack, for a replay to checkpoint.
+     * @return 
+     */
+    TileDelta getRedoStack() {
+        return this.redoStack;
+    }
+    
+    /**
+     * Start keeping moves, carrying on from stacks taken from another game
+     * at the same point, as when restoring a replay's checkpoint.
+     * @param undo
+     * @param redo
+     */
+    void restoreHistory(TileDelta undo, TileDelta redo) {
+        startHistory();
+        this.undoStack = undo;
+        this.redoStack = redo;
+    }
+    
+    /**
+     * Return what is displayed for the tile at the given coordinates, without
+     * allocating anything.
+     * @param x
+     * @param y
+     * @return the surrounding mine count of a flipped tile, or one of
+     * {@link DISPLAY_HIDDEN}, {@link DISPLAY_FLAGGED} or {@link DISPLAY_MINE}.
+     */
+    public int getTileDisplay(int x, int y) {
+        if (!this.grid.inRange(x, y)) {
+            throw new IllegalArgumentException("Coordinates out of range");
+        }
+        if (this.grid.isFlagged(x, y)) return DISPLAY_FLAGGED;
+        if (!this.grid.isFlipped(x, y)) return DISPLAY_HIDDEN;
+        if (this.grid.hasMine(x, y)) {
+            return DISPLAY_MINE;
+        }
+        else {
+            return this.grid.getCount(x, y);
+        }
+    }
+    
+    /**
+     * Determine whether the tile at the given coordinates has not been
+     * flipped, whether or not it is flagged. A flag is only meaningful on a
+     * hidden tile, though {@link getTileDisplay} shows it on any.
+     * @param x
+     * @param y
+     * @return 
+     */
+    public boolean isTileHidden(int x, int y) {
+        if (!this.grid.inRange(x, y)) {
+            throw new IllegalArgumentException("Coordinates out of range");
+        }
+        return !this.grid.isFlipped(x, y);
+    }
+    
+    /**
+     * Get the tiles of this game, for saving it.
+     * @return 
+     */
+    TileStore getTiles() {
+        return this.grid;
+    }
+    
+    /**
+     * Number of tiles from center to an edge (including the center).
+     * @return 
+     */
+    public int getSize() {
+        return this.grid.getSize();
+    }
+    
+    /**
+     * Smallest y coordinate in range in the given x row.
+     * @param x
+     * @return 
+     */
+    public int rowMin(int x) {
+        return this.grid.rowMin(x);
+    }
+    
+    /**
+     * Largest y coordinate in range in the given x row.
+     * @param x
+     * @return 
+     */
+    public int rowMax(int x) {
+        return this.grid.rowMax(x);
+    }
+    
+    /**
+     * Determine whether the given map coordinates are in range.
+     * @param x
+     * @param y
+     * @return 
+     */
+    public boolean pointInRange(int x, int y) {
+        return this.grid.inRange(x, y);
+    }
+    
+    /**
+     * Get the configuration this game was built from.
+     * @return 
+     */
+    public GameConfig getConfig() {
+        return this.config;
+    }
+    
+    /**
+     * Get the seed the mine layout was generated from, along with the first
+     * tile revealed.
+     * @return 
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+    
+    /**
+     * Determine whether the mines have been placed by the first reveal.
+     * @return 
+     */
+    public boolean isPlaced() {
+        return this.placed;
+    }
+    
+    /**
+     * Get the number of flagged tiles which contain a mine.
+     * @return 
+     */
+    public int getCorrectFlags() {
+        return this.correctFlags;
+    }
+    
+    /**
+     * Get the number of flagged tiles which do not contain a mine.
+     * @return 
+     */
+    public int getWrongFlags() {
+        return this.wrongFlags;
+    }
+    
+    /**
+     * Get the number of tiles without a mine which have not been flipped.
+     * @return the count, or -1 for a chunked game.
+     */
+    public int getHiddenSafeTiles() {
+        return this.hiddenSafeTiles;
+    }
+    
+    /**
+     * Get the current state of the game.
+     * @return 
+     */
+    public GameState getState() {
+        return this.gameState;
+    }
+    
+    /**
+     * Determine whether the first move has been made, starting the clock.
+     * @return 
+     */
+    public boolean isStarted() {
+        return this.started;
+    }
+    
+    /**
+     * Time played, from the first move until now or until the game ended.
+     * @return elapsed time in milliseconds.
+     */
+    public long getElapsed() {
+        if (!this.started) {
+            return 0;
+        }
+        long end = this.gameState == GameState.IN_PROGRESS ? this.clock.nanoTime() : this.endTime;
+        return (end - this.startTime) / 1000000L;
+    }
+}
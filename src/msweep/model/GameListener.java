@@ -0,0 +1,23 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Receives the changes made to a {@link GameEngine} by each move.
+ * @author Nick Smith
+ */
+public interface GameListener {
+    
+    /**
+     * Called after a move changed the game, on the thread which made it.
+     * An undo or redo is a move too, and may take a game which was over back
+     * into progress, so the state must be read afresh on every call.
+     * @param engine the game which changed.
+     * @param changes what changed; cleared once this returns, so it must not
+     * be kept.
+     */
+    void gameChanged(GameEngine engine, ChangeSet changes);
+}
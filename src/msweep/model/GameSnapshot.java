@@ -0,0 +1,309 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves games to, and restores them from, a compact binary file.
+ * <p> A file is a header followed by the tiles. The header holds the
+ * configuration, seed, state and time played. The tiles are stored three
+ * bits each, as words of 64 tiles in flat {@link HexGrid} order: the mine
+ * word, then the flipped word, then the flagged word. A field of a million
+ * tiles takes about 375 KB.</p>
+ * <p> Files are streamed through a {@link FileChannel} with a fixed size
+ * buffer. On loading only the set bits are visited: each mine is counted
+ * into its neighbors, and flipped and flagged bits are copied straight in.
+ * The counters are worked out a word at a time from the bits. Chunked games
+ * can't be saved.</p>
+ * <p> Header, version 1:</p>
+ * <pre>
+ * int    magic "MSHX"
+ * short  version
+ * int    size
+ * int    number of mines
+ * long   seed
+ * short  placement name length, then the UTF-8 name
+ * short  win rule name length, then the UTF-8 name
+ * byte   1 if games must be solvable without guessing
+ * byte   1 if the mines have been placed
+ * byte   1 if the first move has been made
+ * byte   game state ordinal
+ * long   milliseconds played
+ * int    number of tiles
+ * </pre>
+ * @author Nick Smith
+ */
+public final class GameSnapshot {
+
+    /**
+     * First four bytes of every saved game.
+     */
+    public static final int MAGIC = 0x4D534858;
+
+    /**
+     * Version of the format written.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Number of tiles in each stored word.
+     */
+    private static final int WORD_TILES = 64;
+
+    /**
+     * Size of the buffer files are streamed through, a multiple of the
+     * three words stored for every 64 tiles.
+     */
+    private static final int BUFFER_SIZE = 3 * Long.BYTES * 2048;
+
+    private GameSnapshot() {
+    }
+
+    /**
+     * Save a game to a file, replacing anything already there.
+     * @param engine
+     * @param file
+     * @throws IOException
+     */
+    public static void save(GameEngine engine, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            save(engine, channel);
+        }
+    }
+
+    /**
+     * Save a game to a channel, such as one onto an array in memory.
+     * @param engine
+     * @param channel
+     * @throws IOException
+     */
+    public static void save(GameEngine engine, WritableByteChannel channel) throws IOException {
+        GameConfig config = engine.getConfig();
+        if (config.isChunked()) {
+            throw new IllegalArgumentException("Chunked fields can't be saved");
+        }
+        HexGrid grid = (HexGrid) engine.getTiles();
+        byte[] placement = config.getPlacement().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] winRule = config.getWinRule().getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(config.getSize());
+        buffer.putInt(config.getMineCount());
+        buffer.putLong(engine.getSeed());
+        buffer.putShort((short) placement.length).put(placement);
+        buffer.putShort((short) winRule.length).put(winRule);
+        buffer.put((byte) (config.isNoGuess() ? 1 : 0));
+        buffer.put((byte) (engine.isPlaced() ? 1 : 0));
+        buffer.put((byte) (engine.isStarted() ? 1 : 0));
+        buffer.put((byte) engine.getState().ordinal());
+        buffer.putLong(engine.getElapsed());
+        buffer.putInt(grid.getTileCount());
+        int tileCount = grid.getTileCount();
+        for (int start = 0; start < tileCount; start += WORD_TILES) {
+            long mines = 0;
+            long flipped = 0;
+            long flagged = 0;
+            int end = Math.min(start + WORD_TILES, tileCount);
+            for (int i = start; i < end; i++) {
+                int bits = grid.getBits(i);
+                long bit = 1L << (i - start);
+                if ((bits & HexGrid.MINE) != 0) {
+                    mines |= bit;
+                }
+                if ((bits & HexGrid.FLIPPED) != 0) {
+                    flipped |= bit;
+                }
+                if ((bits & HexGrid.FLAGGED) != 0) {
+                    flagged |= bit;
+                }
+            }
+            if (buffer.remaining() < 3 * Long.BYTES) {
+                drain(channel, buffer);
+            }
+            buffer.putLong(mines).putLong(flipped).putLong(flagged);
+        }
+        drain(channel, buffer);
+    }
+
+    /**
+     * Restore a game saved by {@link save}. Its clock carries on from the
+     * time played when it was saved.
+     * @param file
+     * @param clock source of time for timing the rest of the game.
+     * @param listener receiver of the changes made by each move, or null.
+     * @return
+     * @throws IOException if the file can't be read or isn't a saved game.
+     */
+    public static GameEngine load(Path file, Clock clock, GameListener listener)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel, clock, listener);
+        }
+    }
+
+    /**
+     * Restore a game saved by {@link save} from a channel.
+     * @param channel
+     * @param clock source of time for timing the rest of the game.
+     * @param listener receiver of the changes made by each move, or null.
+     * @return
+     * @throws IOException if the channel can't be read or doesn't hold a
+     * saved game.
+     */
+    public static GameEngine load(ReadableByteChannel channel, Clock clock,
+            GameListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.limit(0);
+        if (fill(channel, buffer, Integer.BYTES + Short.BYTES).getInt() != MAGIC) {
+            throw new IOException("Not a saved game");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported saved game version " + version);
+        }
+        fill(channel, buffer, 2 * Integer.BYTES + Long.BYTES);
+        int size = buffer.getInt();
+        int mineCount = buffer.getInt();
+        long seed = buffer.getLong();
+        String placement = readName(channel, buffer);
+        String winRule = readName(channel, buffer);
+        fill(channel, buffer, 4 + Long.BYTES + Integer.BYTES);
+        boolean noGuess = buffer.get() != 0;
+        boolean placed = buffer.get() != 0;
+        boolean started = buffer.get() != 0;
+        int state = buffer.get();
+        long elapsed = buffer.getLong();
+        int tileCount = buffer.getInt();
+        GameConfig config;
+        HexGrid grid;
+        try {
+            config = new GameConfig(size, mineCount)
+                    .withSeed(seed)
+                    .withPlacement(MinePlacement.fromName(placement))
+                    .withWinRule(GameConfig.WinRule.fromName(winRule))
+                    .withNoGuess(noGuess);
+            grid = new HexGrid(size);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Bad saved game: " + e.getMessage(), e);
+        }
+        if (state < 0 || state >= GameState.values().length
+                || tileCount != grid.getTileCount()) {
+            throw new IOException("Bad saved game header");
+        }
+        // Row of the last mine, found by walking forward as indices rise
+        int x = 0;
+        int rowStart = 0;
+        int rowEnd = grid.rowMax(0) - grid.rowMin(0);
+        int mineTotal = 0;
+        int correctFlags = 0;
+        int wrongFlags = 0;
+        int flippedSafe = 0;
+        for (int start = 0; start < tileCount; start += WORD_TILES) {
+            fill(channel, buffer, 3 * Long.BYTES);
+            long mines = buffer.getLong();
+            long flipped = buffer.getLong();
+            long flagged = buffer.getLong();
+            if (start + WORD_TILES > tileCount
+                    && ((mines | flipped | flagged) >>> (tileCount - start)) != 0) {
+                throw new IOException("Bad saved game tiles");
+            }
+            mineTotal += Long.bitCount(mines);
+            correctFlags += Long.bitCount(flagged & mines);
+            wrongFlags += Long.bitCount(flagged & ~mines);
+            // A cascade may flip a flagged tile, which keeps its flag
+            flippedSafe += Long.bitCount(flipped & ~mines);
+            // Only the set bits are visited, so untouched tiles cost nothing
+            for (long bits = mines; bits != 0; bits &= bits - 1) {
+                int i = start + Long.numberOfTrailingZeros(bits);
+                while (i > rowEnd) {
+                    x++;
+                    rowStart = rowEnd + 1;
+                    rowEnd += grid.rowMax(x) - grid.rowMin(x) + 1;
+                }
+                grid.addMine(x, grid.rowMin(x) + i - rowStart);
+            }
+            for (long bits = flipped; bits != 0; bits &= bits - 1) {
+                grid.setBits(start + Long.numberOfTrailingZeros(bits), HexGrid.FLIPPED);
+            }
+            for (long bits = flagged; bits != 0; bits &= bits - 1) {
+                grid.setBits(start + Long.numberOfTrailingZeros(bits), HexGrid.FLAGGED);
+            }
+        }
+        if (mineTotal != (placed ? mineCount : 0)) {
+            throw new IOException("Bad saved game: " + mineTotal + " mines");
+        }
+        return new GameEngine(config, grid, placed, started, GameState.values()[state],
+                elapsed, correctFlags, wrongFlags, tileCount - mineCount - flippedSafe,
+                clock, listener);
+    }
+
+    /**
+     * Read a name stored as its length and UTF-8 bytes.
+     * @param channel
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    static String readName(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int length = fill(channel, buffer, Short.BYTES).getShort();
+        if (length < 0 || length > buffer.capacity()) {
+            throw new IOException("Bad name length " + length);
+        }
+        byte[] name = new byte[length];
+        fill(channel, buffer, length).get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Make sure the buffer has at least the given number of bytes left to
+     * read, reading more from the channel if needed.
+     * @param channel
+     * @param buffer a buffer being read from.
+     * @param needed
+     * @return the buffer.
+     * @throws IOException
+     */
+    static ByteBuffer fill(ReadableByteChannel channel, ByteBuffer buffer, int needed)
+            throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Saved game ends early");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Write everything in the buffer to the channel, leaving it empty.
+     * @param channel
+     * @param buffer a buffer being written to.
+     * @throws IOException
+     */
+    static void drain(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
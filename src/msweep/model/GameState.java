@@ -0,0 +1,35 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Enumeration of the three possible states of a game.
+ * <ul>
+ * 
+ * <li>{@code IN_PROGRESS} is the state before the game has started, and
+ * throughout playing until the player has either won or lost the game.</li>
+ * 
+ * <li>{@code WON} is the state where the configured
+ * {@link GameConfig.WinRule} has been met: by default, every tile in the
+ * map which contains a mine has been flagged. It can only occur in
+ * transition from the {@code IN_PROGRESS} state.</li>
+ * 
+ * <li>{@code LOST} is the state where a tile containing a mine has
+ * been flipped. It can only occur in transition from the {@code IN_PROGRESS}
+ * state.</li>
+ * </ul>
+ * <p> Neither end state is permanent when the game keeps its history: undoing
+ * the move which won or lost it with {@link GameEngine#undo} returns it to
+ * {@code IN_PROGRESS}, and redoing that move ends it again. Anything which
+ * watches a game should act on its state as of each change rather than
+ * assume it stays over once it ends.</p>
+ * @author Nick Smith
+ */
+public enum GameState {
+    IN_PROGRESS,
+    WON,
+    LOST
+}
@@ -0,0 +1,287 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Flat, eagerly allocated storage for the tiles of a hexagonal MineField.
+ * <p> Every tile is a single byte in one array, holding the mine, flipped and
+ * flagged bits along with the surrounding mine count. Map coordinates are
+ * turned into an array index with a per-row offset table, so lookups need no
+ * hashing and allocate nothing.</p>
+ * <p> Every tile is read and written through {@link tile} and
+ * {@link setTile}, so a subclass such as {@link MappedGrid} may keep the
+ * same bytes somewhere other than the heap.</p>
+ * @author Nick Smith
+ */
+public class HexGrid implements TileStore {
+
+    /* Tile bits */
+
+    /**
+     * Bit set when the tile contains a mine.
+     */
+    public static final int MINE = 0x01;
+
+    /**
+     * Bit set when the tile has been uncovered.
+     */
+    public static final int FLIPPED = 0x02;
+
+    /**
+     * Bit set when the tile has been flagged.
+     */
+    public static final int FLAGGED = 0x04;
+
+    /**
+     * Position of the three bit surrounding mine count.
+     */
+    private static final int COUNT_SHIFT = 3;
+
+    /**
+     * Mask for the surrounding mine count once shifted down.
+     */
+    private static final int COUNT_MASK = 0x07;
+
+    /**
+     * Number of tiles from center to an edge (including the center).
+     */
+    private final int size;
+
+    /**
+     * Width of the bounding square of coordinates, {@code 2 * size - 1}.
+     */
+    private final int width;
+
+    /**
+     * Flat index of the first tile of each x row.
+     */
+    private final int[] rowStart;
+
+    /**
+     * Total number of tiles.
+     */
+    private final int tileCount;
+
+    /**
+     * The tiles themselves, or null when a subclass stores them.
+     */
+    private final byte[] tiles;
+
+    /**
+     * Construct a grid with every tile empty, unflipped and unflagged.
+     * @param size number of tiles from center to an edge (including the center).
+     */
+    public HexGrid(int size) {
+        this(size, true);
+    }
+
+    /**
+     * Construct a grid, leaving the storage of its tiles to a subclass if
+     * asked.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param allocate whether to hold the tiles in an array on the heap.
+     */
+    HexGrid(int size, boolean allocate) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least one");
+        }
+        this.size = size;
+        this.width = 2 * size - 1;
+        this.rowStart = new int[this.width];
+        long total = 0;
+        for (int x = 0; x < this.width; x++) {
+            this.rowStart[x] = (int) total;
+            total += rowMax(x) - rowMin(x) + 1;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Size too large for a flat grid");
+        }
+        this.tileCount = (int) total;
+        this.tiles = allocate ? new byte[this.tileCount] : null;
+    }
+
+    @Override
+    public boolean inRange(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.width
+                && Math.abs(x - y) < this.size;
+    }
+
+    /**
+     * Get the array index for the given coordinates, which must be in range.
+     * @param x
+     * @param y
+     * @return
+     */
+    public int index(int x, int y) {
+        return this.rowStart[x] + y - rowMin(x);
+    }
+
+    /**
+     * Get the x coordinate of the tile at the given array index.
+     * @param index
+     * @return
+     */
+    public int xOf(int index) {
+        // Binary search for the last row starting at or before index
+        int low = 0;
+        int high = this.width - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (this.rowStart[mid] <= index) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the y coordinate of the tile at the given array index.
+     * @param index
+     * @return
+     */
+    public int yOf(int index) {
+        int x = xOf(index);
+        return index - this.rowStart[x] + rowMin(x);
+    }
+
+    @Override
+    public int rowMin(int x) {
+        return Math.max(0, x - this.size + 1);
+    }
+
+    @Override
+    public int rowMax(int x) {
+        return Math.min(this.width - 1, x + this.size - 1);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Total number of tiles in the grid.
+     * @return
+     */
+    public int getTileCount() {
+        return this.tileCount;
+    }
+
+    /* Tile access */
+
+    /**
+     * Read the byte of the tile at a flat index.
+     * @param index
+     * @return
+     */
+    int tile(int index) {
+        return this.tiles[index];
+    }
+
+    /**
+     * Write the byte of the tile at a flat index.
+     * @param index
+     * @param value
+     */
+    void setTile(int index, int value) {
+        this.tiles[index] = (byte) value;
+    }
+
+    /**
+     * Get the mine, flipped and flagged bits of the tile at a flat index.
+     * @param index
+     * @return
+     */
+    int getBits(int index) {
+        return tile(index) & (MINE | FLIPPED | FLAGGED);
+    }
+
+    /**
+     * Set the flipped and flagged bits of the tile at a flat index, as when
+     * restoring a saved game. Mines are added with {@link addMine} so they
+     * are counted.
+     * @param index
+     * @param bits
+     */
+    void setBits(int index, int bits) {
+        setTile(index, tile(index) | bits & (FLIPPED | FLAGGED));
+    }
+
+    /**
+     * Toggle the flipped and flagged bits of the tile at a flat index, as
+     * when undoing or redoing a move.
+     * @param index
+     * @param bits
+     */
+    void toggleBits(int index, int bits) {
+        setTile(index, tile(index) ^ bits & (FLIPPED | FLAGGED));
+    }
+
+    @Override
+    public boolean hasMine(int x, int y) {
+        return (tile(index(x, y)) & MINE) != 0;
+    }
+
+    @Override
+    public boolean isFlipped(int x, int y) {
+        return (tile(index(x, y)) & FLIPPED) != 0;
+    }
+
+    @Override
+    public boolean isFlagged(int x, int y) {
+        return (tile(index(x, y)) & FLAGGED) != 0;
+    }
+
+    @Override
+    public int getCount(int x, int y) {
+        return (tile(index(x, y)) >> COUNT_SHIFT) & COUNT_MASK;
+    }
+
+    /**
+     * Set the tile at the given coordinates to contain a mine, and add it to
+     * the count of each of its neighbors.
+     * @param x
+     * @param y
+     */
+    public void addMine(int x, int y) {
+        int i = index(x, y);
+        if ((tile(i) & MINE) != 0) {
+            return;
+        }
+        setTile(i, tile(i) | MINE);
+        for (int n = 0; n < NEIGHBOR_DX.length; n++) {
+            int nx = x + NEIGHBOR_DX[n];
+            int ny = y + NEIGHBOR_DY[n];
+            if (inRange(nx, ny)) {
+                // Counts never exceed six, so this can't carry out of the field
+                int ni = index(nx, ny);
+                setTile(ni, tile(ni) + (1 << COUNT_SHIFT));
+            }
+        }
+    }
+
+    @Override
+    public void setFlipped(int x, int y) {
+        int i = index(x, y);
+        setTile(i, tile(i) | FLIPPED);
+    }
+
+    @Override
+    public void toggleFlag(int x, int y) {
+        int i = index(x, y);
+        if ((tile(i) & FLIPPED) == 0) {
+            setTile(i, tile(i) ^ FLAGGED);
+        }
+    }
+}
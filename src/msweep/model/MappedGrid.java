@@ -0,0 +1,266 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tiles of a hexagonal MineField kept in a memory mapped file rather than
+ * on the heap.
+ * <p> The tiles are the same bytes a {@link HexGrid} holds, in the same
+ * order, so every move plays out exactly as it would on the heap. The
+ * operating system pages regions of the field in and out as they are
+ * played, and the garbage collector never sees them.</p>
+ * <p> The file starts with a fixed size header holding the configuration,
+ * and the state and counters of the game, which the engine writes after
+ * every move. A file can therefore be reopened by another process to carry
+ * on the game, with nothing to rebuild.</p>
+ * <p> Header, version 1, followed by one byte per tile:</p>
+ * <pre>
+ * 0   int    magic "MSHM"
+ * 4   int    version
+ * 8   int    size
+ * 12  int    number of mines
+ * 16  long   seed
+ * 24  byte   bit 0: no guessing, bit 1: mines placed, bit 2: started
+ * 25  byte   game state ordinal
+ * 32  long   milliseconds played
+ * 40  int    correct flags
+ * 44  int    wrong flags
+ * 48  int    hidden safe tiles
+ * 64  16 bytes of placement name, UTF-8 padded with zeros
+ * 80  16 bytes of win rule name, UTF-8 padded with zeros
+ * </pre>
+ * @author Nick Smith
+ */
+public class MappedGrid extends HexGrid {
+
+    /**
+     * First four bytes of every mapped game.
+     */
+    public static final int MAGIC = 0x4D53484D;
+
+    /**
+     * Version of the format written.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Number of bytes before the first tile.
+     */
+    public static final int HEADER_SIZE = 128;
+
+    /* Header offsets */
+
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int SIZE_AT = 8;
+    private static final int MINES_AT = 12;
+    private static final int SEED_AT = 16;
+    private static final int FLAGS_AT = 24;
+    private static final int STATE_AT = 25;
+    private static final int ELAPSED_AT = 32;
+    private static final int CORRECT_AT = 40;
+    private static final int WRONG_AT = 44;
+    private static final int HIDDEN_AT = 48;
+    private static final int PLACEMENT_AT = 64;
+    private static final int WIN_RULE_AT = 80;
+
+    /**
+     * Number of bytes kept for each name.
+     */
+    private static final int NAME_BYTES = 16;
+
+    /* Bits of the flags byte */
+
+    private static final int NO_GUESS = 0x01;
+    private static final int PLACED = 0x02;
+    private static final int STARTED = 0x04;
+
+    /**
+     * The mapped header.
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * The mapped tiles, one byte each in flat index order.
+     */
+    private final MappedByteBuffer tiles;
+
+    /**
+     * Construct a grid over a file, mapping its tiles.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param channel the open file, which may be closed once this returns.
+     * @param header the mapped header.
+     * @throws IOException
+     */
+    private MappedGrid(int size, FileChannel channel, MappedByteBuffer header)
+            throws IOException {
+        super(size, false);
+        this.header = header;
+        this.tiles = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, getTileCount());
+    }
+
+    @Override
+    int tile(int index) {
+        return this.tiles.get(index);
+    }
+
+    @Override
+    void setTile(int index, int value) {
+        this.tiles.put(index, (byte) value);
+    }
+
+    /**
+     * Start a new game kept in a file, replacing anything already there.
+     * The file grows to one byte per tile, but only the regions played are
+     * ever written.
+     * @param config size and number of mines for the new game.
+     * @param file
+     * @param clock source of time for timing the game.
+     * @param listener receiver of the changes made by each move, or null.
+     * @return
+     * @throws IOException
+     */
+    public static GameEngine create(GameConfig config, Path file, Clock clock,
+            GameListener listener) throws IOException {
+        if (config.isChunked()) {
+            throw new IllegalArgumentException("Chunked fields can't be mapped");
+        }
+        MappedGrid grid;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC_AT, MAGIC);
+            header.putInt(VERSION_AT, VERSION);
+            header.putInt(SIZE_AT, config.getSize());
+            header.putInt(MINES_AT, config.getMineCount());
+            putName(header, PLACEMENT_AT, config.getPlacement().getName());
+            putName(header, WIN_RULE_AT, config.getWinRule().getName());
+            grid = new MappedGrid(config.getSize(), channel, header);
+        }
+        return new GameEngine(config, grid, clock, listener);
+    }
+
+    /**
+     * Carry on a game kept in a file by {@link create}. Its clock carries on
+     * from the time played as of its last move.
+     * @param file
+     * @param clock source of time for timing the rest of the game.
+     * @param listener receiver of the changes made by each move, or null.
+     * @return
+     * @throws IOException if the file can't be read or isn't a mapped game.
+     */
+    public static GameEngine open(Path file, Clock clock, GameListener listener)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a mapped game: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (header.getInt(MAGIC_AT) != MAGIC) {
+                throw new IOException("Not a mapped game: " + file);
+            }
+            int version = header.getInt(VERSION_AT);
+            if (version != VERSION) {
+                throw new IOException("Unsupported mapped game version " + version);
+            }
+            int flags = header.get(FLAGS_AT);
+            int state = header.get(STATE_AT);
+            GameConfig config;
+            MappedGrid grid;
+            try {
+                config = new GameConfig(header.getInt(SIZE_AT), header.getInt(MINES_AT))
+                        .withSeed(header.getLong(SEED_AT))
+                        .withPlacement(MinePlacement.fromName(getName(header, PLACEMENT_AT)))
+                        .withWinRule(GameConfig.WinRule.fromName(getName(header, WIN_RULE_AT)))
+                        .withNoGuess((flags & NO_GUESS) != 0);
+                if (state < 0 || state >= GameState.values().length) {
+                    throw new IllegalArgumentException("Unknown state " + state);
+                }
+                if (channel.size() != HEADER_SIZE + GameConfig.tileCount(config.getSize())) {
+                    throw new IllegalArgumentException("Wrong file size " + channel.size());
+                }
+                grid = new MappedGrid(config.getSize(), channel, header);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("Bad mapped game: " + e.getMessage(), e);
+            }
+            return new GameEngine(config, grid, (flags & PLACED) != 0, (flags & STARTED) != 0,
+                    GameState.values()[state], header.getLong(ELAPSED_AT),
+                    header.getInt(CORRECT_AT), header.getInt(WRONG_AT), header.getInt(HIDDEN_AT),
+                    clock, listener);
+        }
+    }
+
+    /**
+     * Write the state and counters of the game played on these tiles into
+     * the header.
+     * @param engine
+     */
+    void store(GameEngine engine) {
+        int flags = (engine.getConfig().isNoGuess() ? NO_GUESS : 0)
+                | (engine.isPlaced() ? PLACED : 0)
+                | (engine.isStarted() ? STARTED : 0);
+        this.header.putLong(SEED_AT, engine.getSeed());
+        this.header.put(FLAGS_AT, (byte) flags);
+        this.header.put(STATE_AT, (byte) engine.getState().ordinal());
+        this.header.putLong(ELAPSED_AT, engine.getElapsed());
+        this.header.putInt(CORRECT_AT, engine.getCorrectFlags());
+        this.header.putInt(WRONG_AT, engine.getWrongFlags());
+        this.header.putInt(HIDDEN_AT, engine.getHiddenSafeTiles());
+    }
+
+    /**
+     * Write every change made to the file out to the storage device, rather
+     * than leaving it to the operating system. Changes survive the process
+     * either way.
+     */
+    public void force() {
+        this.tiles.force();
+        this.header.force();
+    }
+
+    /**
+     * Write a name into a fixed size slot of the header.
+     * @param header
+     * @param at
+     * @param name
+     */
+    private static void putName(ByteBuffer header, int at, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > NAME_BYTES) {
+            throw new IllegalArgumentException("Name too long to map: " + name);
+        }
+        for (int i = 0; i < NAME_BYTES; i++) {
+            header.put(at + i, i < bytes.length ? bytes[i] : 0);
+        }
+    }
+
+    /**
+     * Read a name from a fixed size slot of the header.
+     * @param header
+     * @param at
+     * @return
+     */
+    private static String getName(ByteBuffer header, int at) {
+        byte[] bytes = new byte[NAME_BYTES];
+        int length = 0;
+        while (length < NAME_BYTES && header.get(at + length) != 0) {
+            bytes[length] = header.get(at + length);
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -6,73 +6,133 @@
 package msweep.model;
 
 import java.awt.Point;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.sql.Time;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Observable;
-import java.util.Set;
-import javax.swing.Timer;
 import util.Utils;
 import util.Utils.LoggerLevel;
 
 /**
  * Represents a hexagonal mine field, and all of its related data to the game.
+ * <p> The rules and state of the game are kept by a {@link GameEngine}; a
+ * MineField adapts it for the Swing view, passing its changes on to
+ * Observers. The time played is read from the engine whenever it is shown,
+ * so nothing needs to tick while the game is played.</p>
  * @author Nick Smith
  */
-public class MineField extends Observable implements ActionListener {
+public class MineField extends Observable implements GameListener {
     
     /**
-     * Integer value representing the size of the hexagonal map.
-     * <p> One indicates a single hexagon, two indicates a single hexagon
-     * surrounded by a ring of hexagons, three indicates two rings, etc. </p>
+     * {@link getTileDisplay} value of a tile which has not been flipped.
      */
-    private final int size;
+    public static final int DISPLAY_HIDDEN = GameEngine.DISPLAY_HIDDEN;
     
     /**
-     * The hexagon map is represented by a mapping of {@link java.awt.Point}
-     * objects (representing hexagonal coordinates to {@link Node} objects 
-     * representing the Tile itself.
+     * {@link getTileDisplay} value of a flagged tile.
      */
-    private final HashMap<Point, Node> map;
+    public static final int DISPLAY_FLAGGED = GameEngine.DISPLAY_FLAGGED;
     
     /**
-     * Set of {@link java.awt.Point} which represent the locations within 
-     * this MineField objects map which contain mines.
+     * {@link getTileDisplay} value of a flipped tile containing a mine.
      */
-    private Set<Point> mineLocations;
+    public static final int DISPLAY_MINE = GameEngine.DISPLAY_MINE;
     
     /**
-     * A value which defines the game state which the model currently
-     * represents.
+     * The game being shown.
      */
-    private MineFieldState gameState;
+    private final GameEngine engine;
     
     /**
-     * {@link javax.swing.Timer} to handle tracking time spent playing any
-     * particular game.
+     * Changes made since observers were last notified, passed to them with
+     * each notification.
      */
-    private Timer timer;
+    private final ChangeSet changes;
     
     /**
-     * Flag for whether the timer has yet started.
+     * Number of unfinished {@link beginBatch} calls, while above zero
+     * updates are held back.
      */
-    private boolean started;
+    private int batchDepth;
     
     /**
-     * Initial time + value for the time passed in seconds.
+     * Whether an update was requested during the current batch.
      */
-    private int time;
+    private boolean updatePending;
+    
+    /**
+     * Number of updates which were merged into another or had nothing to
+     * report, so never reached the observers.
+     */
+    private long suppressedUpdates;
     
     /**
      * Construct and initialize a new MineField which is a hex made of smaller ones.
-     * @param size number of tiles from center to an edge (including the center).
+     * Every move made is recorded in a journal, see {@link getJournal}, and
+     * moves on a hexagonal field can be undone.
+     * @param config size and number of mines for the new MineField.
+     */
+    public MineField(GameConfig config) {
+        this.changes = new ChangeSet();
+        this.engine = new GameEngine(config, Clock.SYSTEM, this);
+        this.engine.startJournal();
+        if (!config.isChunked()) {
+            this.engine.startHistory();
+        }
+    }
+    
+    /**
+     * Construct a MineField showing a game read from a file.
+     * @param source reads the game, given this MineField to listen to it.
+     * @throws IOException 
+     */
+    private MineField(EngineSource source) throws IOException {
+        this.changes = new ChangeSet();
+        this.engine = source.open(this);
+        // Moves made from here on can be undone
+        this.engine.startHistory();
+    }
+    
+    /**
+     * Restore a MineField from a game saved with {@link save}.
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read or isn't a saved game.
+     */
+    public static MineField load(Path file) throws IOException {
+        return new MineField(listener -> GameSnapshot.load(file, Clock.SYSTEM, listener));
+    }
+    
+    /**
+     * Construct a new MineField whose tiles are kept in a memory mapped
+     * file, see {@link MappedGrid}.
+     * @param config size and number of mines for the new MineField.
+     * @param file
+     * @return
+     * @throws IOException 
+     */
+    public static MineField createMapped(GameConfig config, Path file) throws IOException {
+        return new MineField(listener -> MappedGrid.create(config, file, Clock.SYSTEM, listener));
+    }
+    
+    /**
+     * Reopen a MineField created with {@link createMapped}, carrying on its
+     * game.
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read or isn't a mapped game.
+     */
+    public static MineField openMapped(Path file) throws IOException {
+        return new MineField(listener -> MappedGrid.open(file, Clock.SYSTEM, listener));
+    }
+    
+    /**
+     * Save the game to a file, see {@link GameSnapshot}.
+     * @param file
+     * @throws IOException 
      */
-    public MineField(int size) {
-        this.size = size;
-        map = new HashMap<>();
-        init();
+    public void save(Path file) throws IOException {
+        Utils.log("Saving to " + file, LoggerLevel.LOW);
+        GameSnapshot.save(this.engine, file);
     }
     
     /**
@@ -81,29 +141,8 @@ public class MineField extends Observable implements ActionListener {
      * @param y 
      */
     public void flip(int x, int y) {
-        if (!this.started) {
-            // Start the timer
-            this.started = true;
-            this.timer.start();
-        }
-        if (!pointInRange(x, y)) {
-            // Flip should only be called when the coords are in range
-            throw new IllegalArgumentException("Coordinate out of range");
-        }
-        Point p = new Point(x, y);
-        if (!this.map.get(p).isFlipped()) {
-            if (this.map.get(p).isFlagged()) {
-                // Can't be flipped until flag is removed!
-                return;
-            }
-            Utils.log("Flipping x: " + x + " y: " + y, LoggerLevel.LOW);
-            if (this.map.get(p).hasMine()) {
-                // Game over
-                this.mineFlipped();
-            }
-            this.map.get(p).flip();
-            this.update();
-        }
+        Utils.log("Flipping x: " + x + " y: " + y, LoggerLevel.LOW);
+        this.engine.reveal(x, y);
     }
     
     /**
@@ -112,219 +151,187 @@ public class MineField extends Observable implements ActionListener {
      * @param y 
      */
     public void flag(int x, int y) {
-        if (!this.started) {
-            // Start the timer
-            this.started = true;
-            this.timer.start();
-        }
-        if (!pointInRange(x, y)) {
-            throw new IllegalArgumentException("Coordinate out of range");
-        }
-        Point p = new Point(x, y);
-        if (!this.map.get(p).isFlipped()) {
-            // Only do anything if it isn't flipped.
-            Utils.log("Flagging x: " + x + " y: " + y, LoggerLevel.LOW);
-            this.map.get(p).toggleFlag();
-            checkAndHandleWin();
-            this.update();
-        }
+        Utils.log("Flagging x: " + x + " y: " + y, LoggerLevel.LOW);
+        this.engine.toggleFlag(x, y);
     }
     
     /**
-     * Update all current observers.
+     * Flip every hidden, unflagged neighbor of a flipped tile whose count is
+     * matched by the flags around it, along with the empty regions around
+     * them. Everything flipped reaches the observers in one update.
+     * @param x
+     * @param y 
      */
-    public void update() {
-        this.setChanged();
-        this.notifyObservers();
+    public void chord(int x, int y) {
+        Utils.log("Chording x: " + x + " y: " + y, LoggerLevel.LOW);
+        this.engine.chord(x, y);
+    }
+
+    /**
+     * Undo the last move, see {@link GameEngine#undo}.
+     * @return whether there was a move to undo.
+     */
+    public boolean undo() {
+        Utils.log("Undoing", LoggerLevel.LOW);
+        return this.engine.undo().isChanged();
     }
     
     /**
-     * Return an array of the Points in this MineField's map.
-     * @return An array of {@link java.awt.Point} which contains the key set
-     * of this MineField's map.
+     * Redo the last move undone, see {@link GameEngine#redo}.
+     * @return whether there was a move to redo.
      */
-    public Point[] getTilePoints() {
-        Set<Point> points = this.map.keySet();
-        return points.toArray(new Point[points.size()]);
+    public boolean redo() {
+        Utils.log("Redoing", LoggerLevel.LOW);
+        return this.engine.redo().isChanged();
     }
     
     /**
-     * Return the displayed value for the tile at the given coordinates.
-     * @param x
-     * @param y
-     * @return Textual representation of the current displayed value.
+     * Determine whether there is a move which can be undone.
+     * @return 
      */
-    public String getTileValue(int x, int y) {
-        if (!pointInRange(x, y)) {
-            throw new IllegalArgumentException("Coordinates out of range");
-        }
-        Point p = new Point(x, y);
-        if (this.map.get(p).isFlagged()) return "!";
-        if (!this.map.get(p).isFlipped()) return " ";
-        if (this.map.get(p).hasMine()) {
-            return "*";
-        }
-        else {
-            return Integer.toString(this.map.get(p).getCount());
-        }
+    public boolean canUndo() {
+        return this.engine.canUndo();
+    }
+
+    @Override
+    public void gameChanged(GameEngine engine, ChangeSet moveChanges) {
+        this.changes.addAll(moveChanges);
+        this.update();
     }
     
     /**
-     * Checks to see if every mine tile has been flagged, and sets the state
-     * to WON if so.
+     * Update all current observers, passing them the {@link ChangeSet} of
+     * what has changed since the last update.
+     * <p> Nothing is sent if nothing has changed. During a batch the update
+     * is held back until {@link endBatch}, so every change made in the batch
+     * reaches the observers in a single notification.</p>
      */
-    private void checkAndHandleWin() {
-        boolean allFlagged = true;
-        for (Point minePoint: this.mineLocations) {
-            if (!pointInRange(minePoint.x, minePoint.y)) {
-                throw new IllegalStateException("Mine locations not consistent with map");
-            }
-            if (!this.map.get(minePoint).isFlagged()) {
-                allFlagged = false;
-                break;
+    public void update() {
+        if (this.batchDepth > 0) {
+            if (this.updatePending) {
+                this.suppressedUpdates++;
             }
+            this.updatePending = true;
+            return;
         }
-        if (allFlagged) {
-            // All mines have been cleared; stop the timer and change state.
-            this.timer.stop();
-            this.gameState = MineFieldState.WON;
+        if (this.changes.isEmpty()) {
+            this.suppressedUpdates++;
+            return;
         }
+        this.setChanged();
+        this.notifyObservers(this.changes);
+        this.changes.clear();
     }
     
     /**
-     * Handles actions to be performed when a mine Node is flipped, including
-     * setting the state to LOST.
+     * Start holding back updates, such as for all the changes made while
+     * handling one input event. Batches may be nested.
      */
-    private void mineFlipped() {
-        // Stop the timer
-        this.timer.stop();
-        // Show mine locations
-        this.mineLocations.stream().forEach((_item) -> {
-            if (!pointInRange(_item.x, _item.y)) {
-                throw new IllegalStateException("Mine locations not consistent with map");
-            }
-            this.map.get(_item).flip();
-        });
-        // Set the appropriate game state
-        this.gameState = MineFieldState.LOST;
+    public void beginBatch() {
+        this.batchDepth++;
     }
     
     /**
-     * Initialize Nodes, populate their fields.
+     * Finish a batch started with {@link beginBatch}, sending a single
+     * update for everything changed during it once the outermost batch ends.
      */
-    private void init() {
-        int adder = size - 1;
-        // Fancy loop which will generate a perfect Hex map.
-        for (int x = 0; x < size + adder; x++) {
-            for (int y = 0; y < size + adder; y++) {
-                if (Math.abs(x - y) < this.size) {
-                    this.map.put(new Point(x, y), new Node());
-                }
-            }
+    public void endBatch() {
+        if (this.batchDepth <= 0) {
+            throw new IllegalStateException("No batch to end");
         }
-        // Add mines randomly into the map
-        addMines();
-        // Add links between neighboring nodes
-        setNeighbors();
-        // Prepare the timer
-        this.time = MineParameters.INITIAL_TIME;
-        this.started = false;
-        this.timer = new Timer(1000, this);
-        this.timer.setActionCommand(MineParameters.COMMAND_INC_TIMER);
-        // Set the appropriate game state.
-        this.gameState = MineFieldState.IN_PROGRESS;
-    }
-    
-    /**
-     * Add mines to random Nodes.
-     */
-    private void addMines() {
-        // Get a copy of the key set for this MineFields map
-        Set<Point> allPoints = new HashSet<>();
-        this.map.keySet().stream().forEach((p) -> {
-            allPoints.add(p);
-        });
-        // Ensure we are not trying to place more Mines than possible
-        if (allPoints.size() < MineParameters.NUMBER_MINES) {
-            throw new IllegalStateException("Can't have more mines than nodes");
+        this.batchDepth--;
+        if (this.batchDepth == 0 && this.updatePending) {
+            this.updatePending = false;
+            this.update();
         }
-        // New set representing where we are putting mines.
-        Set<Point> bombPoints = new HashSet<>();
-        // Choose a point in allPoints to place a mine, remove from allPoints
-        // and add to bombPoints. Repeat until bombPoints has enough.
-        while (bombPoints.size() < MineParameters.NUMBER_MINES) {
-            int i = (int) (Math.random() * (double) allPoints.size());
-            Point p = (Point) allPoints.toArray()[i];
-            bombPoints.add(p);
-            allPoints.remove(p);
+    }
+    
+    /**
+     * Number of updates which never reached the observers, because they were
+     * merged into a batch or had nothing to report.
+     * @return 
+     */
+    public long getSuppressedUpdates() {
+        return this.suppressedUpdates;
+    }
+    
+    /**
+     * Return an array of the Points in this MineField's map.
+     * @return An array of {@link java.awt.Point} which contains every
+     * coordinate of this MineField's map.
+     */
+    public Point[] getTilePoints() {
+        long tileCount = GameConfig.tileCount(getSize());
+        if (tileCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many tiles to list");
         }
-        // Save the new set
-        this.mineLocations = bombPoints;
-        // Add the mines
-        bombPoints.stream().forEach((p) -> {
-            this.addMine(p.x, p.y);
-        });
-    }
-    
-    /**
-     * Populate the neighbor fields for each Node in the MineField, and then
-     * calculate and set their count.
-     */
-    private void setNeighbors() {
-        // Use a lambda function which takes a point and map over it
-        this.map.keySet().stream().map((p) -> {
-            int x = p.x;
-            int y = p.y;
-            // Top
-            if (pointInRange(x, y + 1)) {
-                this.map.get(p).setTop(map.get(new Point(x, y + 1)));
-            }
-            // Top right
-            if (pointInRange(x + 1, y + 1)) {
-                this.map.get(p).setTopRight(map.get(new Point(x + 1, y + 1)));
+        Point[] points = new Point[(int) tileCount];
+        int i = 0;
+        for (int x = 0; x < 2 * getSize() - 1; x++) {
+            int max = rowMax(x);
+            for (int y = rowMin(x); y <= max; y++) {
+                points[i++] = new Point(x, y);
             }
-            // Bottom right
-            if (pointInRange(x + 1, y)) {
-                this.map.get(p).setBottomRight(map.get(new Point(x + 1, y)));
-            }
-            // Bottom
-            if (pointInRange(x, y - 1)) {
-                this.map.get(p).setBottom(map.get(new Point(x, y - 1)));
-            }
-            // Bottom left
-            if (pointInRange(x - 1, y - 1)) {
-                this.map.get(p).setBottomLeft(map.get(new Point(x - 1, y - 1)));
-            }
-            // Top left
-            if (pointInRange(x - 1, y)) {
-                this.map.get(p).setTopLeft(map.get(new Point(x - 1, y)));
-            }
-            return p;
-        }).forEach((p) -> {
-            // Update count
-            this.map.get(p).setCount();
-        });
+        }
+        return points;
     }
     
     /**
-     * Sets a mine at the given coordinates.
+     * Return the displayed value for the tile at the given coordinates.
      * @param x
-     * @param y 
+     * @param y
+     * @return Textual representation of the current displayed value.
      */
-    private void addMine(int x, int y) {
-        if (!pointInRange(x, y)) {
-            // Must be called with a valid coordinate
-            throw new IllegalArgumentException("Coordinate out of range");
+    public String getTileValue(int x, int y) {
+        int display = getTileDisplay(x, y);
+        switch (display) {
+            case DISPLAY_FLAGGED:
+                return "!";
+            case DISPLAY_HIDDEN:
+                return " ";
+            case DISPLAY_MINE:
+                return "*";
+            default:
+                return Integer.toString(display);
         }
-        this.map.get(new Point(x, y)).setMine();
     }
     
     /**
-     * Increments the time and updates.
+     * Return what is displayed for the tile at the given coordinates, without
+     * allocating anything.
+     * @param x
+     * @param y
+     * @return the surrounding mine count of a flipped tile, or one of
+     * {@link DISPLAY_HIDDEN}, {@link DISPLAY_FLAGGED} or {@link DISPLAY_MINE}.
      */
-    private void incrementTime() {
-        this.time += 1;
-        this.update();
+    public int getTileDisplay(int x, int y) {
+        return this.engine.getTileDisplay(x, y);
+    }
+    
+    /**
+     * Number of tiles from center to an edge (including the center).
+     * @return 
+     */
+    public int getSize() {
+        return this.engine.getSize();
+    }
+    
+    /**
+     * Smallest y coordinate in range in the given x row.
+     * @param x
+     * @return 
+     */
+    public int rowMin(int x) {
+        return this.engine.rowMin(x);
+    }
+    
+    /**
+     * Largest y coordinate in range in the given x row.
+     * @param x
+     * @return 
+     */
+    public int rowMax(int x) {
+        return this.engine.rowMax(x);
     }
     
     /**
@@ -334,57 +341,103 @@ public class MineField extends Observable implements ActionListener {
      * @return 
      */
     public boolean pointInRange(int x, int y) {
-        return this.map.containsKey(new Point(x, y));
+        return this.engine.pointInRange(x, y);
+    }
+    
+    /**
+     * Get the game this MineField shows.
+     * @return 
+     */
+    public GameEngine getEngine() {
+        return this.engine;
+    }
+    
+    /**
+     * Get the journal of every move made, from which the game can be
+     * replayed.
+     * @return the journal, or null for games read from a file.
+     */
+    public MoveJournal getJournal() {
+        return this.engine.getJournal();
+    }
+    
+    /**
+     * Get the configuration this MineField was built from.
+     * @return 
+     */
+    public GameConfig getConfig() {
+        return this.engine.getConfig();
+    }
+    
+    /**
+     * Get the seed the mine layout was generated from.
+     * @return 
+     */
+    public long getSeed() {
+        return this.engine.getSeed();
+    }
+    
+    /**
+     * Get the number of flagged tiles which contain a mine.
+     * @return 
+     */
+    public int getCorrectFlags() {
+        return this.engine.getCorrectFlags();
+    }
+    
+    /**
+     * Get the number of flagged tiles which do not contain a mine.
+     * @return 
+     */
+    public int getWrongFlags() {
+        return this.engine.getWrongFlags();
+    }
+    
+    /**
+     * Get the number of tiles without a mine which have not been flipped.
+     * @return the count, or -1 for a chunked MineField.
+     */
+    public int getHiddenSafeTiles() {
+        return this.engine.getHiddenSafeTiles();
     }
     
     /**
      * Get the current state of the MineField.
      * @return 
      */
-    public MineFieldState getState() {
-        return this.gameState;
+    public GameState getState() {
+        return this.engine.getState();
     }
     
     /**
-     * Access for the time passed since the game began.
-     * @return {@link java.sql.Time} representation of the time since the first
-     * flag/flip in this Minefield.
+     * Determine whether the game is being played: the first move has been
+     * made and the game hasn't ended.
+     * @return 
      */
-    public Time getTime() {
-        return new Time((long) (this.time) * 1000);
+    public boolean isRunning() {
+        return this.engine.isStarted() && this.engine.getState() == GameState.IN_PROGRESS;
     }
-
-    @Override
-    public void actionPerformed(ActionEvent ae) {
-        if (ae.getActionCommand().equals(MineParameters.COMMAND_INC_TIMER)) {
-            this.incrementTime();
-        }
-        else {
-            // No other action events yet defined, something went wrong.
-            throw new UnsupportedOperationException("Unsupported action event for MineField");
-        }
+    
+    /**
+     * Access for the time passed since the game began.
+     * @return milliseconds since the first flag/flip in this MineField, up
+     * to when the game ended.
+     */
+    public long getElapsed() {
+        return this.engine.getElapsed();
     }
     
     /**
-     * Enumeration of the three possible states of a MineField instance.
-     * <ul>
-     * 
-     * <li>{@code IN_PROGRESS} is the state before the game has started, and
-     * throughout playing until the player has either won or lost the game.</li>
-     * 
-     * <li>{@code WON} is the state where every {@link Node} in the map which
-     * contains a mine has been flagged. It can only occur in transition 
-     * from the {@code IN_PROGRESS} state and is permanent for an instance of
-     * MineField.</li>
-     * 
-     * <li>{@code LOST} is the state where a {@link Node} containing a mine has
-     * been flipped. It can only occur in transition from the {@code IN_PROGRESS}
-     * state and is permanent for an instance of MineField.</li>
-     * </ul>
-     */
-    public enum MineFieldState {
-        IN_PROGRESS,
-        WON,
-        LOST
+     * Reads a game from a file for a MineField to show.
+     */
+    private interface EngineSource {
+        
+        /**
+         * Read the game.
+         * @param listener receiver of the changes made by each move.
+         * @return
+         * @throws IOException 
+         */
+        GameEngine open(GameListener listener) throws IOException;
     }
 }
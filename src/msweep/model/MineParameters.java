@@ -12,24 +12,34 @@ package msweep.model;
 public class MineParameters {
  
     /**
-     * Size of the MineField. May make this vary in the future.
+     * Size of the MineField when none is given on the command line.
      */
-    public static final int FIELD_SIZE = 10;
+    public static final int DEFAULT_FIELD_SIZE = 10;
     
     /**
-     * Number of Mines. Make a function of {@link FIELD_SIZE} to this if that
-     * becomes a variable in the future.
+     * Number of Mines when no count or density is given on the command line.
      */
-    public static final int NUMBER_MINES = 55;
+    public static final int DEFAULT_NUMBER_MINES = 55;
     
     /**
-     * {@link String} to be used by the MineField's {@link javax.swing.Timer}
-     * when sending an ActionEvent to increment time.
+     * Smallest allowed size of a MineField.
      */
-    public static final String COMMAND_INC_TIMER = "incTimer";
+    public static final int MIN_FIELD_SIZE = 1;
     
     /**
-     * Initial value of the MineFields {@code time} to show hh:mm:ss as 00:00:00.
+     * Largest allowed size of a MineField.
      */
-    public static final int INITIAL_TIME = -1 * 60 * 60 * 19;
+    public static final int MAX_FIELD_SIZE = 10000;
+    
+    /**
+     * Largest allowed size of a chunked MineField.
+     */
+    public static final int MAX_CHUNKED_FIELD_SIZE = 1000000;
+    
+    /**
+     * Smallest mine density of a chunked MineField. Below about this density
+     * the tiles with a count of zero join up into regions spanning the whole
+     * field, so a single flip could cascade without end.
+     */
+    public static final double MIN_CHUNKED_DENSITY = 0.1;
 }
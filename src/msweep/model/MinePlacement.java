@@ -0,0 +1,50 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Strategy for choosing which tiles of a MineField contain mines.
+ * <p> Tiles are identified by their index in the MineField's {@link HexGrid}.
+ * Implementations must draw all randomness from the given source, so the
+ * same seed always produces the same layout.</p>
+ * @author Nick Smith
+ */
+public interface MinePlacement {
+    
+    /**
+     * Choose {@code mineCount} distinct tile indices out of {@code tileCount}.
+     * @param tileCount number of tiles to choose from.
+     * @param mineCount number of tiles to choose.
+     * @param random source of randomness.
+     * @return array of {@code mineCount} distinct indices in
+     * {@code [0, tileCount)}.
+     */
+    int[] place(int tileCount, int mineCount, SplittableRandom random);
+    
+    /**
+     * Short name of this strategy, as used on the command line.
+     * @return 
+     */
+    String getName();
+    
+    /**
+     * Find the strategy with the given command line name.
+     * @param name
+     * @return 
+     */
+    static MinePlacement fromName(String name) {
+        switch (name) {
+            case FisherYatesPlacement.NAME:
+                return new FisherYatesPlacement();
+            case ReservoirPlacement.NAME:
+                return new ReservoirPlacement();
+            default:
+                throw new IllegalArgumentException("Unknown placement: " + name);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Enumeration of the moves which can be made in a game.
+ * <ul>
+ * 
+ * <li>{@code REVEAL} flips a tile, see {@link GameEngine#reveal}.</li>
+ * 
+ * <li>{@code FLAG} toggles the flag of a tile, see
+ * {@link GameEngine#toggleFlag}.</li>
+ * 
+ * <li>{@code CHORD} flips the neighbors of a flipped tile whose flags are
+ * all placed, see {@link GameEngine#chord}.</li>
+ * 
+ * <li>{@code UNDO} undoes the last move, see {@link GameEngine#undo}. Its
+ * coordinates are ignored.</li>
+ * 
+ * <li>{@code REDO} redoes the last move undone, see {@link GameEngine#redo}.
+ * Its coordinates are ignored.</li>
+ * </ul>
+ * @author Nick Smith
+ */
+public enum Move {
+    REVEAL,
+    FLAG,
+    CHORD,
+    UNDO,
+    REDO;
+    
+    /**
+     * Make this move in a game.
+     * @param engine
+     * @param x
+     * @param y
+     * @return 
+     */
+    public MoveResult apply(GameEngine engine, int x, int y) {
+        switch (this) {
+            case REVEAL:
+                return engine.reveal(x, y);
+            case FLAG:
+                return engine.toggleFlag(x, y);
+            case CHORD:
+                return engine.chord(x, y);
+            case UNDO:
+                return engine.undo();
+            case REDO:
+                return engine.redo();
+            default:
+                throw new IllegalStateException("Invalid move found");
+        }
+    }
+}
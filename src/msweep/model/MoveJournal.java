@@ -0,0 +1,496 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only record of every move made in a game, from which the game can
+ * be rebuilt by a {@link Replay}.
+ * <p> Along with the board's configuration and seed, each move is stored as
+ * three variable length numbers: its action and the change in x from the
+ * move before, the change in y, and the milliseconds since the move before.
+ * Changes in coordinates are zigzag encoded so small steps either way take
+ * one byte, and most moves take three or four bytes in all.</p>
+ * <p> Journals are written to and read from files through a
+ * {@link FileChannel}. The file is a header followed by the moves:</p>
+ * <pre>
+ * int    magic "MSHJ"
+ * short  version
+ * int    size
+ * int    number of mines, 0 if chunked
+ * double density
+ * byte   1 if chunked
+ * byte   1 if games must be solvable without guessing
+ * long   seed
+ * short  placement name length, then the UTF-8 name
+ * short  win rule name length, then the UTF-8 name
+ * int    number of moves
+ * int    number of bytes of moves
+ * </pre>
+ * @author Nick Smith
+ */
+public class MoveJournal {
+
+    /**
+     * First four bytes of every journal file.
+     */
+    public static final int MAGIC = 0x4D53484A;
+
+    /**
+     * Version of the format written.
+     */
+    public static final short VERSION = 2;
+
+    /**
+     * Number of bits the action takes below the change in x.
+     */
+    private static final int MOVE_BITS = 3;
+
+    /**
+     * Number of bits the action took in version 1, before undo and redo.
+     */
+    private static final int V1_MOVE_BITS = 2;
+
+    /**
+     * Most bytes one move can take: two 32 bit numbers and a 64 bit one.
+     */
+    private static final int MAX_MOVE_BYTES = 5 + 5 + 10;
+
+    /**
+     * Size of the buffer files are streamed through.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Every move, in the order made.
+     */
+    private static final Move[] MOVES = Move.values();
+
+    /**
+     * Configuration of the board, with its seed fixed.
+     */
+    private final GameConfig config;
+
+    /**
+     * The encoded moves.
+     */
+    private byte[] data;
+
+    /**
+     * Number of bytes of {@link data} used.
+     */
+    private int length;
+
+    /**
+     * Number of moves recorded.
+     */
+    private int moveCount;
+
+    /**
+     * Number of undo and redo moves recorded.
+     */
+    private int undoCount;
+
+    /**
+     * Coordinates of the last move recorded.
+     */
+    private int lastX;
+
+    /**
+     * Coordinates of the last move recorded.
+     */
+    private int lastY;
+
+    /**
+     * Time of the last move recorded.
+     */
+    private long lastTime;
+
+    /**
+     * Number of bits the action takes in {@link data}, which is less than
+     * {@link MOVE_BITS} only while an older journal is being read.
+     */
+    private int moveBits = MOVE_BITS;
+
+    /**
+     * Construct an empty journal.
+     * @param config configuration of the board, with its seed fixed.
+     */
+    public MoveJournal(GameConfig config) {
+        if (!config.hasSeed()) {
+            throw new IllegalArgumentException("A journal needs the board's seed");
+        }
+        this.config = config;
+        this.data = new byte[64];
+    }
+
+    /**
+     * Record a move at the end of the journal.
+     * @param move
+     * @param x
+     * @param y
+     * @param time milliseconds since the first move, never less than that
+     * of the move before.
+     */
+    public void append(Move move, int x, int y, long time) {
+        if (time < this.lastTime) {
+            throw new IllegalArgumentException("Moves must be recorded in time order");
+        }
+        if (this.length + MAX_MOVE_BYTES > this.data.length) {
+            this.data = Arrays.copyOf(this.data, this.data.length * 2);
+        }
+        putVarint(zigzag(x - this.lastX) << MOVE_BITS | move.ordinal());
+        putVarint(zigzag(y - this.lastY));
+        putVarint(time - this.lastTime);
+        this.lastX = x;
+        this.lastY = y;
+        this.lastTime = time;
+        this.moveCount++;
+        if (move == Move.UNDO || move == Move.REDO) {
+            this.undoCount++;
+        }
+    }
+
+    /**
+     * Record a move without coordinates, such as an undo, at the end of the
+     * journal. It is stored at the coordinates of the move before, which
+     * takes the least space.
+     * @param move
+     * @param time milliseconds since the first move.
+     */
+    public void append(Move move, long time) {
+        append(move, this.lastX, this.lastY, time);
+    }
+
+    /**
+     * Write an unsigned number seven bits at a time, lowest first, with the
+     * top bit of each byte set if more follow.
+     * @param value
+     */
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.data[this.length++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        this.data[this.length++] = (byte) value;
+    }
+
+    /**
+     * Map a signed number onto an unsigned one, small either way mapping to
+     * small.
+     * @param value
+     * @return
+     */
+    private static long zigzag(int value) {
+        return ((long) value << 1 ^ value >> 31) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Start reading the journal from its first move.
+     * @return
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Get the configuration of the board, with its seed fixed.
+     * @return
+     */
+    public GameConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Get the number of moves recorded.
+     * @return
+     */
+    public int getMoveCount() {
+        return this.moveCount;
+    }
+
+    /**
+     * Get the number of undo and redo moves recorded. Replaying them needs
+     * the changes of the moves before kept, see {@link GameEngine#startHistory}.
+     * @return
+     */
+    public int getUndoCount() {
+        return this.undoCount;
+    }
+
+    /**
+     * Get the number of bytes the moves take.
+     * @return
+     */
+    public int getByteCount() {
+        return this.length;
+    }
+
+    /**
+     * Write the journal to a file, replacing anything already there.
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        byte[] placement = this.config.getPlacement().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] winRule = this.config.getWinRule().getName().getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putInt(this.config.getSize());
+            // Chunked fields have no fixed number of mines
+            buffer.putInt(this.config.isChunked() ? 0 : this.config.getMineCount());
+            buffer.putDouble(this.config.getDensity());
+            buffer.put((byte) (this.config.isChunked() ? 1 : 0));
+            buffer.put((byte) (this.config.isNoGuess() ? 1 : 0));
+            buffer.putLong(this.config.getSeed());
+            buffer.putShort((short) placement.length).put(placement);
+            buffer.putShort((short) winRule.length).put(winRule);
+            buffer.putInt(this.moveCount);
+            buffer.putInt(this.length);
+            GameSnapshot.drain(channel, buffer);
+            channel.write(ByteBuffer.wrap(this.data, 0, this.length));
+        }
+    }
+
+    /**
+     * Read a journal written by {@link write}. More moves may be appended
+     * to it. Journals of version 1 are read too, and are written back in
+     * the current version.
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read or isn't a journal.
+     */
+    public static MoveJournal read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.limit(0);
+            if (GameSnapshot.fill(channel, buffer, Integer.BYTES + Short.BYTES).getInt() != MAGIC) {
+                throw new IOException("Not a journal: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+            GameSnapshot.fill(channel, buffer, 2 * Integer.BYTES + Double.BYTES + 2 + Long.BYTES);
+            int size = buffer.getInt();
+            int mineCount = buffer.getInt();
+            double density = buffer.getDouble();
+            boolean chunked = buffer.get() != 0;
+            boolean noGuess = buffer.get() != 0;
+            long seed = buffer.getLong();
+            String placement = GameSnapshot.readName(channel, buffer);
+            String winRule = GameSnapshot.readName(channel, buffer);
+            GameSnapshot.fill(channel, buffer, 2 * Integer.BYTES);
+            int moveCount = buffer.getInt();
+            int length = buffer.getInt();
+            MoveJournal journal;
+            try {
+                GameConfig config = chunked
+                        ? GameConfig.chunked(size, density)
+                        : new GameConfig(size, mineCount);
+                journal = new MoveJournal(config
+                        .withSeed(seed)
+                        .withPlacement(MinePlacement.fromName(placement))
+                        .withWinRule(GameConfig.WinRule.fromName(winRule))
+                        .withNoGuess(noGuess));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("Bad journal: " + e.getMessage(), e);
+            }
+            if (moveCount < 0 || length < 0) {
+                throw new IOException("Bad journal header");
+            }
+            journal.data = new byte[Math.max(length, 64)];
+            int read = Math.min(buffer.remaining(), length);
+            buffer.get(journal.data, 0, read);
+            ByteBuffer rest = ByteBuffer.wrap(journal.data, read, length - read);
+            while (rest.hasRemaining()) {
+                if (channel.read(rest) < 0) {
+                    throw new IOException("Journal ends early");
+                }
+            }
+            journal.length = length;
+            journal.moveBits = version == 1 ? V1_MOVE_BITS : MOVE_BITS;
+            // Find where the next move appended carries on from
+            Cursor cursor = journal.cursor();
+            try {
+                while (cursor.next()) {
+                    journal.moveCount++;
+                    if (cursor.move == Move.UNDO || cursor.move == Move.REDO) {
+                        journal.undoCount++;
+                    }
+                }
+            }
+            catch (IllegalStateException e) {
+                throw new IOException("Bad journal: " + e.getMessage(), e);
+            }
+            if (journal.moveCount != moveCount) {
+                throw new IOException("Bad journal: " + journal.moveCount + " moves found");
+            }
+            if (journal.moveBits != MOVE_BITS) {
+                // Encode the moves afresh, so those appended match them
+                MoveJournal current = new MoveJournal(journal.config);
+                Cursor moves = journal.cursor();
+                while (moves.next()) {
+                    current.append(moves.move, moves.x, moves.y, moves.time);
+                }
+                return current;
+            }
+            journal.lastX = cursor.x;
+            journal.lastY = cursor.y;
+            journal.lastTime = cursor.time;
+            return journal;
+        }
+    }
+
+    /**
+     * Reads the moves of a journal in order. Moves appended after a cursor
+     * is made are read too.
+     */
+    public final class Cursor {
+
+        /**
+         * Position of the next move in {@link data}.
+         */
+        private int position;
+
+        /**
+         * Number of moves read.
+         */
+        private int index;
+
+        private Move move;
+        private int x;
+        private int y;
+        private long time;
+
+        private Cursor() {
+        }
+
+        /**
+         * Construct a cursor at the same move as another.
+         * @param other
+         */
+        private Cursor(Cursor other) {
+            this.position = other.position;
+            this.index = other.index;
+            this.move = other.move;
+            this.x = other.x;
+            this.y = other.y;
+            this.time = other.time;
+        }
+
+        /**
+         * Read the next move.
+         * @return whether there was one.
+         */
+        public boolean next() {
+            if (this.position >= MoveJournal.this.length) {
+                return false;
+            }
+            int bits = MoveJournal.this.moveBits;
+            long first = getVarint();
+            int ordinal = (int) (first & ((1 << bits) - 1));
+            if (ordinal >= MOVES.length) {
+                throw new IllegalStateException("Unknown move " + ordinal);
+            }
+            this.move = MOVES[ordinal];
+            this.x += unzigzag(first >>> bits);
+            this.y += unzigzag(getVarint());
+            this.time += getVarint();
+            this.index++;
+            return true;
+        }
+
+        /**
+         * Read an unsigned number written by {@link putVarint}.
+         * @return
+         */
+        private long getVarint() {
+            byte[] bytes = MoveJournal.this.data;
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (this.position >= MoveJournal.this.length) {
+                    throw new IllegalStateException("Journal ends within a move");
+                }
+                b = bytes[this.position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        /**
+         * Reverse {@link zigzag}.
+         * @param value
+         * @return
+         */
+        private int unzigzag(long value) {
+            int v = (int) value;
+            return v >>> 1 ^ -(v & 1);
+        }
+
+        /**
+         * Copy this cursor, to carry on reading from here later.
+         * @return
+         */
+        public Cursor copy() {
+            return new Cursor(this);
+        }
+
+        /**
+         * Get the number of moves read so far.
+         * @return
+         */
+        public int getIndex() {
+            return this.index;
+        }
+
+        /**
+         * Get the action of the last move read.
+         * @return
+         */
+        public Move getMove() {
+            return this.move;
+        }
+
+        /**
+         * Get the x coordinate of the last move read.
+         * @return
+         */
+        public int getX() {
+            return this.x;
+        }
+
+        /**
+         * Get the y coordinate of the last move read.
+         * @return
+         */
+        public int getY() {
+            return this.y;
+        }
+
+        /**
+         * Get the time of the last move read.
+         * @return milliseconds since the first move.
+         */
+        public long getTime() {
+            return this.time;
+        }
+    }
+}
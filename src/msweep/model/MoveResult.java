@@ -0,0 +1,106 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Immutable summary of what a single move did to a {@link GameEngine}.
+ * @author Nick Smith
+ */
+public class MoveResult {
+    
+    /**
+     * What kind of change the move made.
+     */
+    private final Outcome outcome;
+    
+    /**
+     * Number of tiles the move flipped.
+     */
+    private final int revealed;
+    
+    /**
+     * State of the game after the move.
+     */
+    private final GameState state;
+    
+    /**
+     * Construct a result.
+     * @param outcome what kind of change the move made.
+     * @param revealed number of tiles the move flipped.
+     * @param state state of the game after the move.
+     */
+    MoveResult(Outcome outcome, int revealed, GameState state) {
+        this.outcome = outcome;
+        this.revealed = revealed;
+        this.state = state;
+    }
+    
+    /**
+     * What kind of change the move made.
+     * @return 
+     */
+    public Outcome getOutcome() {
+        return this.outcome;
+    }
+    
+    /**
+     * Number of tiles the move flipped, including any mines shown when the
+     * game was lost.
+     * @return 
+     */
+    public int getRevealed() {
+        return this.revealed;
+    }
+    
+    /**
+     * State of the game after the move.
+     * @return 
+     */
+    public GameState getState() {
+        return this.state;
+    }
+    
+    /**
+     * Determine whether the move changed anything.
+     * @return 
+     */
+    public boolean isChanged() {
+        return this.outcome != Outcome.UNCHANGED;
+    }
+    
+    @Override
+    public String toString() {
+        return this.outcome + " revealed=" + this.revealed + " state=" + this.state;
+    }
+    
+    /**
+     * Enumeration of the kinds of change a move can make.
+     * <ul>
+     * 
+     * <li>{@code UNCHANGED}: the move had no effect, such as flipping a
+     * flagged tile or playing after the game ended.</li>
+     * 
+     * <li>{@code REVEALED}: one or more safe tiles were flipped.</li>
+     * 
+     * <li>{@code FLAGGED} and {@code UNFLAGGED}: a flag was placed or
+     * removed.</li>
+     * 
+     * <li>{@code EXPLODED}: a mine was flipped, losing the game.</li>
+     * 
+     * <li>{@code UNDONE} and {@code REDONE}: a move was undone or
+     * redone.</li>
+     * </ul>
+     */
+    public enum Outcome {
+        UNCHANGED,
+        REVEALED,
+        FLAGGED,
+        UNFLAGGED,
+        EXPLODED,
+        UNDONE,
+        REDONE
+    }
+}
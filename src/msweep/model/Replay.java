@@ -0,0 +1,259 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds the games recorded in a {@link MoveJournal}, as they stood after
+ * any number of moves.
+ * <p> Games are deterministic given their seed and moves, so replaying a
+ * journal from a fresh board gives exactly the game that was played,
+ * including the time played. Each move is made at the time recorded for it
+ * on a clock the replay controls.</p>
+ * <p> While the journal is first replayed, the game is saved every
+ * {@code interval} moves as an in-memory {@link GameSnapshot}. Seeking to a
+ * move then restores the nearest checkpoint before it and replays at most
+ * {@code interval - 1} moves on from there. Each checkpoint takes three bits
+ * a tile, so long games on large fields want a longer interval. Chunked
+ * games can't be saved, so seeking in them always replays from the first
+ * move.</p>
+ * <p> Undo and redo moves need the changes of the moves before them, so
+ * when a journal has any, every game is replayed with its history kept and
+ * each checkpoint keeps the tops of its undo and redo stacks too.</p>
+ * @author Nick Smith
+ */
+public class Replay {
+
+    /**
+     * Default number of moves between checkpoints.
+     */
+    public static final int DEFAULT_INTERVAL = 1024;
+
+    /**
+     * The journal being replayed.
+     */
+    private final MoveJournal journal;
+
+    /**
+     * Number of moves between checkpoints.
+     */
+    private final int interval;
+
+    /**
+     * Whether the games are replayed with their history kept.
+     */
+    private final boolean history;
+
+    /**
+     * The games after every {@link interval} moves, the first after
+     * {@code interval} moves.
+     */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    /**
+     * Construct a replay with checkpoints at the default interval.
+     * @param journal
+     */
+    public Replay(MoveJournal journal) {
+        this(journal, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Construct a replay, playing through the journal once to make the
+     * checkpoints. Moves appended to the journal later are replayed too, but
+     * without checkpoints.
+     * @param journal
+     * @param interval number of moves between checkpoints.
+     */
+    public Replay(MoveJournal journal, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1");
+        }
+        this.journal = journal;
+        this.interval = interval;
+        this.history = journal.getUndoCount() > 0;
+        if (journal.getConfig().isChunked()) {
+            return;
+        }
+        ReplayClock clock = new ReplayClock();
+        GameEngine engine = start(journal, clock);
+        MoveJournal.Cursor cursor = journal.cursor();
+        while (cursor.next()) {
+            play(engine, clock, cursor);
+            if (cursor.getIndex() % interval == 0) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    GameSnapshot.save(engine, Channels.newChannel(out));
+                }
+                catch (IOException e) {
+                    // Nothing here does I/O
+                    throw new UncheckedIOException(e);
+                }
+                this.checkpoints.add(new Checkpoint(out.toByteArray(), cursor.copy(),
+                        engine.getUndoStack(), engine.getRedoStack()));
+            }
+        }
+    }
+
+    /**
+     * Rebuild the game as it stood after the given number of moves.
+     * @param moves
+     * @return a new game, which can be played on from there.
+     */
+    public GameEngine seek(int moves) {
+        if (moves < 0 || moves > this.journal.getMoveCount()) {
+            throw new IllegalArgumentException("No move " + moves + " in the journal");
+        }
+        int checkpoint = Math.min(moves / this.interval, this.checkpoints.size());
+        if (!this.history && this.journal.getUndoCount() > 0) {
+            // Undo moves were appended since, which the checkpoints can't carry on from
+            checkpoint = 0;
+        }
+        ReplayClock clock = new ReplayClock();
+        GameEngine engine;
+        MoveJournal.Cursor cursor;
+        if (checkpoint == 0) {
+            engine = start(this.journal, clock);
+            cursor = this.journal.cursor();
+        }
+        else {
+            Checkpoint saved = this.checkpoints.get(checkpoint - 1);
+            cursor = saved.cursor.copy();
+            clock.now = cursor.getTime() * 1000000L;
+            try {
+                engine = GameSnapshot.load(Channels.newChannel(
+                        new ByteArrayInputStream(saved.snapshot)), clock, null);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (this.history) {
+                engine.restoreHistory(saved.undoStack, saved.redoStack);
+            }
+        }
+        while (cursor.getIndex() < moves && cursor.next()) {
+            play(engine, clock, cursor);
+        }
+        return engine;
+    }
+
+    /**
+     * Rebuild a game as it stood after its last move.
+     * @param journal
+     * @return
+     */
+    public static GameEngine replay(MoveJournal journal) {
+        ReplayClock clock = new ReplayClock();
+        GameEngine engine = start(journal, clock);
+        MoveJournal.Cursor cursor = journal.cursor();
+        while (cursor.next()) {
+            play(engine, clock, cursor);
+        }
+        return engine;
+    }
+
+    /**
+     * Start a fresh game to replay a journal on, keeping its history if the
+     * journal has undo moves.
+     * @param journal
+     * @param clock
+     * @return
+     */
+    private static GameEngine start(MoveJournal journal, ReplayClock clock) {
+        GameEngine engine = new GameEngine(journal.getConfig(), clock, null);
+        if (journal.getUndoCount() > 0) {
+            engine.startHistory();
+        }
+        return engine;
+    }
+
+    /**
+     * Make the move a cursor is at, at the time it was made.
+     * @param engine
+     * @param clock
+     * @param cursor
+     */
+    private static void play(GameEngine engine, ReplayClock clock, MoveJournal.Cursor cursor) {
+        clock.now = cursor.getTime() * 1000000L;
+        cursor.getMove().apply(engine, cursor.getX(), cursor.getY());
+    }
+
+    /**
+     * Get the journal being replayed.
+     * @return
+     */
+    public MoveJournal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Get the number of checkpoints made.
+     * @return
+     */
+    public int getCheckpointCount() {
+        return this.checkpoints.size();
+    }
+
+    /**
+     * A game saved partway through the journal.
+     */
+    private static class Checkpoint {
+
+        /**
+         * The game, saved by {@link GameSnapshot}.
+         */
+        private final byte[] snapshot;
+
+        /**
+         * Position in the journal, ready to read the next move.
+         */
+        private final MoveJournal.Cursor cursor;
+
+        /**
+         * Tops of the game's undo and redo stacks, if its history was kept.
+         */
+        private final TileDelta undoStack;
+        private final TileDelta redoStack;
+
+        /**
+         * Construct a checkpoint.
+         * @param snapshot
+         * @param cursor
+         * @param undoStack
+         * @param redoStack
+         */
+        Checkpoint(byte[] snapshot, MoveJournal.Cursor cursor, TileDelta undoStack,
+                TileDelta redoStack) {
+            this.snapshot = snapshot;
+            this.cursor = cursor;
+            this.undoStack = undoStack;
+            this.redoStack = redoStack;
+        }
+    }
+
+    /**
+     * Clock which only moves when the replay sets it.
+     */
+    private static class ReplayClock implements Clock {
+
+        /**
+         * The current time in nanoseconds.
+         */
+        private long now;
+
+        @Override
+        public long nanoTime() {
+            return this.now;
+        }
+    }
+}
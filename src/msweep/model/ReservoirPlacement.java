@@ -0,0 +1,71 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Places mines by reservoir sampling the stream of tile indices.
+ * <p> Uses the skipping variant of reservoir sampling (Li's Algorithm L),
+ * which jumps straight to the next tile to be swapped into the reservoir.
+ * Memory is proportional to the number of mines only, and time grows with
+ * {@code mineCount * log(tileCount / mineCount)} rather than with the
+ * number of tiles.</p>
+ * @author Nick Smith
+ */
+public class ReservoirPlacement implements MinePlacement {
+    
+    /**
+     * Name of this strategy on the command line.
+     */
+    public static final String NAME = "reservoir";
+
+    @Override
+    public int[] place(int tileCount, int mineCount, SplittableRandom random) {
+        if (mineCount > tileCount) {
+            throw new IllegalStateException("Can't have more mines than tiles");
+        }
+        int[] reservoir = new int[mineCount];
+        if (mineCount == 0) {
+            return reservoir;
+        }
+        // Fill the reservoir with the first tiles
+        for (int i = 0; i < mineCount; i++) {
+            reservoir[i] = i;
+        }
+        double w = Math.exp(Math.log(nextOpenUnit(random)) / mineCount);
+        long i = mineCount - 1;
+        while (true) {
+            // Skip ahead to the next tile which replaces a reservoir entry
+            i += (long) Math.floor(Math.log(nextOpenUnit(random)) / Math.log(1.0 - w)) + 1;
+            if (i >= tileCount) {
+                break;
+            }
+            reservoir[random.nextInt(mineCount)] = (int) i;
+            w *= Math.exp(Math.log(nextOpenUnit(random)) / mineCount);
+        }
+        return reservoir;
+    }
+    
+    /**
+     * Draw a uniform value from the open interval (0, 1), so its logarithm is
+     * always finite.
+     * @param random
+     * @return 
+     */
+    private static double nextOpenUnit(SplittableRandom random) {
+        double u;
+        do {
+            u = random.nextDouble();
+        } while (u == 0.0);
+        return u;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+import java.util.Arrays;
+
+/**
+ * The change one move made to a hexagonal game, which can be undone and
+ * redone in time proportional to its size.
+ * <p> Every move changes a single bit of the tiles it touches: a reveal or
+ * a chord sets the flipped bit of each tile it flips, and a flag toggles
+ * the flagged bit of one tile. A delta keeps which bit changed and the flat
+ * {@link HexGrid} indices of the tiles, as runs of consecutive indices, so
+ * a cascade over a large region takes about two ints for each row it
+ * crosses. Toggling the bit over the runs both undoes and redoes the
+ * move.</p>
+ * <p> Alongside the tiles a delta keeps the counters from before and after
+ * the move, the state after it and the time played when it was made.
+ * Deltas are immutable, each linking to the one below it on an undo or redo
+ * stack, so a whole stack is kept by keeping its top.</p>
+ * @author Nick Smith
+ */
+final class TileDelta {
+
+    /**
+     * The bit of each tile the move changed.
+     */
+    private final int bit;
+
+    /**
+     * Alternating start index and length of each run of changed tiles.
+     */
+    private final int[] runs;
+
+    /**
+     * Number of tiles the move changed.
+     */
+    private final int tileCount;
+
+    /**
+     * Counters of the game before the move.
+     */
+    private final int correctBefore;
+    private final int wrongBefore;
+    private final int hiddenBefore;
+
+    /**
+     * Counters of the game after the move.
+     */
+    private final int correctAfter;
+    private final int wrongAfter;
+    private final int hiddenAfter;
+
+    /**
+     * State of the game after the move.
+     */
+    private final GameState state;
+
+    /**
+     * Milliseconds played when the move was made.
+     */
+    private final long elapsed;
+
+    /**
+     * The delta below this one on its stack, or null.
+     */
+    private final TileDelta next;
+
+    /**
+     * Number of deltas on the stack from this one down.
+     */
+    private final int depth;
+
+    /**
+     * Construct the delta of a move which has just been made.
+     * @param grid the game's tiles.
+     * @param changes the tiles the move changed.
+     * @param bit the bit of each tile the move changed.
+     * @param correctBefore
+     * @param wrongBefore
+     * @param hiddenBefore
+     * @param engine the game, as it is after the move.
+     * @param elapsed milliseconds played when the move was made.
+     * @param next the top of the undo stack.
+     */
+    TileDelta(HexGrid grid, ChangeSet changes, int bit, int correctBefore,
+            int wrongBefore, int hiddenBefore, GameEngine engine, long elapsed,
+            TileDelta next) {
+        int[] indices = new int[changes.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = grid.index(changes.getX(i), changes.getY(i));
+        }
+        int[] found = new int[2 * indices.length];
+        int length = indices.length > grid.getTileCount() / Long.SIZE
+                ? runsByBitmap(indices, grid.getTileCount(), found)
+                : runsBySorting(indices, found);
+        int count = 0;
+        for (int r = 1; r < length; r += 2) {
+            count += found[r];
+        }
+        this.bit = bit;
+        this.runs = Arrays.copyOf(found, length);
+        this.tileCount = count;
+        this.correctBefore = correctBefore;
+        this.wrongBefore = wrongBefore;
+        this.hiddenBefore = hiddenBefore;
+        this.correctAfter = engine.getCorrectFlags();
+        this.wrongAfter = engine.getWrongFlags();
+        this.hiddenAfter = engine.getHiddenSafeTiles();
+        this.state = engine.getState();
+        this.elapsed = elapsed;
+        this.next = next;
+        this.depth = next == null ? 1 : next.depth + 1;
+    }
+
+    /**
+     * Find the runs of a few tile indices by sorting them.
+     * @param indices the indices, in any order and possibly repeated.
+     * @param found receives the start and length of each run.
+     * @return number of ints of found used.
+     */
+    private static int runsBySorting(int[] indices, int[] found) {
+        Arrays.sort(indices);
+        int length = 0;
+        for (int index: indices) {
+            int end = length > 0 ? found[length - 2] + found[length - 1] : -1;
+            if (index == end) {
+                found[length - 1]++;
+            }
+            else if (index > end) {
+                found[length++] = index;
+                found[length++] = 1;
+            }
+            // Otherwise it is repeated, and toggling it twice would undo nothing
+        }
+        return length;
+    }
+
+    /**
+     * Find the runs of many tile indices by setting their bits in a bitmap
+     * and scanning it a word at a time, which is quicker than sorting once
+     * they are more than one in 64 of the tiles, such as for a large
+     * cascade.
+     * @param indices the indices, in any order and possibly repeated.
+     * @param tileCount number of tiles in the grid.
+     * @param found receives the start and length of each run.
+     * @return number of ints of found used.
+     */
+    private static int runsByBitmap(int[] indices, int tileCount, int[] found) {
+        long[] words = new long[(tileCount + Long.SIZE - 1) / Long.SIZE];
+        for (int index: indices) {
+            words[index / Long.SIZE] |= 1L << index;
+        }
+        int length = 0;
+        int start = -1;
+        for (int w = 0; w < words.length; w++) {
+            int base = w * Long.SIZE;
+            int bit = 0;
+            while (bit < Long.SIZE) {
+                // Look for the next set bit outside a run, or clear bit inside one
+                long rest = (start < 0 ? words[w] : ~words[w]) >>> bit;
+                if (rest == 0) {
+                    break;
+                }
+                bit += Long.numberOfTrailingZeros(rest);
+                if (start < 0) {
+                    start = base + bit;
+                }
+                else {
+                    found[length++] = start;
+                    found[length++] = base + bit - start;
+                    start = -1;
+                }
+            }
+        }
+        if (start >= 0) {
+            found[length++] = start;
+            found[length++] = words.length * Long.SIZE - start;
+        }
+        return length;
+    }
+
+    /**
+     * Construct a delta sharing another's changes, on top of a different
+     * stack.
+     * @param other
+     * @param next
+     */
+    private TileDelta(TileDelta other, TileDelta next) {
+        this.bit = other.bit;
+        this.runs = other.runs;
+        this.tileCount = other.tileCount;
+        this.correctBefore = other.correctBefore;
+        this.wrongBefore = other.wrongBefore;
+        this.hiddenBefore = other.hiddenBefore;
+        this.correctAfter = other.correctAfter;
+        this.wrongAfter = other.wrongAfter;
+        this.hiddenAfter = other.hiddenAfter;
+        this.state = other.state;
+        this.elapsed = other.elapsed;
+        this.next = next;
+        this.depth = next == null ? 1 : next.depth + 1;
+    }
+
+    /**
+     * Move this delta onto the top of another stack.
+     * @param stack top of the stack, or null.
+     * @return the new top.
+     */
+    TileDelta onto(TileDelta stack) {
+        return new TileDelta(this, stack);
+    }
+
+    /**
+     * Copy the top of the stack from this delta down, dropping the deltas
+     * below it.
+     * @param keep number of deltas to keep.
+     * @return the top of the copy.
+     */
+    TileDelta trim(int keep) {
+        TileDelta[] kept = new TileDelta[Math.min(keep, this.depth)];
+        TileDelta delta = this;
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = delta;
+            delta = delta.next;
+        }
+        TileDelta stack = null;
+        for (int i = kept.length - 1; i >= 0; i--) {
+            stack = kept[i].onto(stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Toggle the changed bit of every tile in the runs, which undoes the
+     * move if it was made and redoes it if it was undone.
+     * @param grid the game's tiles.
+     * @param changes records each tile toggled, may be null.
+     */
+    void toggle(HexGrid grid, ChangeSet changes) {
+        for (int r = 0; r < this.runs.length; r += 2) {
+            int index = this.runs[r];
+            int end = index + this.runs[r + 1];
+            int x = grid.xOf(index);
+            int y = grid.yOf(index);
+            for (; index < end; index++) {
+                grid.toggleBits(index, this.bit);
+                if (changes != null) {
+                    // Runs carry on into the next row at its first tile
+                    if (y > grid.rowMax(x)) {
+                        x++;
+                        y = grid.rowMin(x);
+                    }
+                    changes.add(x, y++);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the delta below this one on its stack.
+     * @return the delta, or null.
+     */
+    TileDelta getNext() {
+        return this.next;
+    }
+
+    /**
+     * Get the number of deltas on the stack from this one down.
+     * @return
+     */
+    int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Get the number of tiles the move changed.
+     * @return
+     */
+    int getTileCount() {
+        return this.tileCount;
+    }
+
+    /**
+     * Get the number of runs the changed tiles are stored as.
+     * @return
+     */
+    int getRunCount() {
+        return this.runs.length / 2;
+    }
+
+    /**
+     * Get the number of correct flags before the move.
+     * @return
+     */
+    int getCorrectBefore() {
+        return this.correctBefore;
+    }
+
+    /**
+     * Get the number of wrong flags before the move.
+     * @return
+     */
+    int getWrongBefore() {
+        return this.wrongBefore;
+    }
+
+    /**
+     * Get the number of hidden safe tiles before the move.
+     * @return
+     */
+    int getHiddenBefore() {
+        return this.hiddenBefore;
+    }
+
+    /**
+     * Get the number of correct flags after the move.
+     * @return
+     */
+    int getCorrectAfter() {
+        return this.correctAfter;
+    }
+
+    /**
+     * Get the number of wrong flags after the move.
+     * @return
+     */
+    int getWrongAfter() {
+        return this.wrongAfter;
+    }
+
+    /**
+     * Get the number of hidden safe tiles after the move.
+     * @return
+     */
+    int getHiddenAfter() {
+        return this.hiddenAfter;
+    }
+
+    /**
+     * Get the state of the game after the move.
+     * @return
+     */
+    GameState getState() {
+        return this.state;
+    }
+
+    /**
+     * Get the time played when the move was made.
+     * @return milliseconds played.
+     */
+    long getElapsed() {
+        return this.elapsed;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.model;
+
+/**
+ * Storage for the tiles of a hexagonal MineField.
+ * <p> Coordinates follow the MineField convention: {@code (x, y)} is in range
+ * when both lie in {@code [0, 2 * size - 1)} and {@code |x - y| < size}.
+ * Accessors must only be called with coordinates in range.</p>
+ * @author Nick Smith
+ */
+public interface TileStore {
+
+    /**
+     * X offsets of the six neighbors, in the order top left, top, top right,
+     * bottom right, bottom, bottom left.
+     */
+    int[] NEIGHBOR_DX = {-1, 0, 1, 1, 0, -1};
+
+    /**
+     * Y offsets of the six neighbors, matching {@link NEIGHBOR_DX}.
+     */
+    int[] NEIGHBOR_DY = {0, 1, 1, 0, -1, -1};
+
+    /**
+     * Number of tiles from center to an edge (including the center).
+     * @return
+     */
+    int getSize();
+
+    /**
+     * Width of the bounding square of coordinates, {@code 2 * size - 1}.
+     * @return
+     */
+    default int getWidth() {
+        return 2 * getSize() - 1;
+    }
+
+    /**
+     * Determine whether the given map coordinates are in range.
+     * @param x
+     * @param y
+     * @return
+     */
+    default boolean inRange(int x, int y) {
+        int width = getWidth();
+        return x >= 0 && y >= 0 && x < width && y < width
+                && Math.abs(x - y) < getSize();
+    }
+
+    /**
+     * Smallest y coordinate in the given x row.
+     * @param x
+     * @return
+     */
+    default int rowMin(int x) {
+        return Math.max(0, x - getSize() + 1);
+    }
+
+    /**
+     * Largest y coordinate in the given x row.
+     * @param x
+     * @return
+     */
+    default int rowMax(int x) {
+        return Math.min(getWidth() - 1, x + getSize() - 1);
+    }
+
+    /**
+     * Determine whether the tile at the given coordinates contains a mine.
+     * @param x
+     * @param y
+     * @return
+     */
+    boolean hasMine(int x, int y);
+
+    /**
+     * Determine whether the tile at the given coordinates has been flipped.
+     * @param x
+     * @param y
+     * @return
+     */
+    boolean isFlipped(int x, int y);
+
+    /**
+     * Determine whether the tile at the given coordinates has been flagged.
+     * @param x
+     * @param y
+     * @return
+     */
+    boolean isFlagged(int x, int y);
+
+    /**
+     * Get the surrounding mine count for the tile at the given coordinates.
+     * @param x
+     * @param y
+     * @return
+     */
+    int getCount(int x, int y);
+
+    /**
+     * Mark the tile at the given coordinates as flipped, without cascading.
+     * @param x
+     * @param y
+     */
+    void setFlipped(int x, int y);
+
+    /**
+     * Toggle the flag for the tile at the given coordinates (only if not yet
+     * flipped).
+     * @param x
+     * @param y
+     */
+    void toggleFlag(int x, int y);
+}
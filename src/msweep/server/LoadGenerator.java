@@ -0,0 +1,201 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.server;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import msweep.model.GameConfig;
+import msweep.model.GameState;
+import msweep.model.MineParameters;
+import msweep.model.Move;
+import util.Utils;
+import util.Utils.LoggerLevel;
+
+/**
+ * Drives a {@link SessionManager} with many simulated players, and reports
+ * the moves per second handled and the latency of each move.
+ * <p> Run with
+ * {@code java -cp MsweepHex.jar msweep.server.LoadGenerator [sessions=N]
+ * [moves=N] [threads=N] [size=N]}. Each player makes its moves one after
+ * another, picking random tiles, and starts a new game whenever one ends.
+ * Latency is measured from submitting a move to its result being
+ * available, so it includes time queued behind other sessions.</p>
+ * @author Nick Smith
+ */
+public class LoadGenerator {
+    
+    private static final String SESSIONS_ARG = "sessions=";
+    private static final String MOVES_ARG = "moves=";
+    private static final String THREADS_ARG = "threads=";
+    private static final String SIZE_ARG = "size=";
+    
+    private static final int DEFAULT_SESSIONS = 10000;
+    private static final int DEFAULT_MOVES = 100;
+    
+    /**
+     * Manager being driven.
+     */
+    private final SessionManager manager;
+    
+    /**
+     * Size of the field each session plays.
+     */
+    private final int size;
+    
+    /**
+     * Latency of every move in nanoseconds, filled in as moves complete.
+     */
+    private final long[] latencies;
+    
+    /**
+     * Number of latencies recorded so far.
+     */
+    private final AtomicInteger recorded = new AtomicInteger();
+    
+    /**
+     * Counted down as each player finishes.
+     */
+    private final CountDownLatch finished;
+    
+    /**
+     * Construct a generator.
+     * @param manager
+     * @param size
+     * @param sessions
+     * @param moves number of moves made by each session.
+     */
+    private LoadGenerator(SessionManager manager, int size, int sessions, int moves) {
+        this.manager = manager;
+        this.size = size;
+        this.latencies = new long[sessions * moves];
+        this.finished = new CountDownLatch(sessions);
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = DEFAULT_SESSIONS;
+        int moves = DEFAULT_MOVES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int size = MineParameters.DEFAULT_FIELD_SIZE;
+        try {
+            for (String s: args) {
+                if (s.startsWith(SESSIONS_ARG)) {
+                    sessions = Integer.parseInt(s.substring(SESSIONS_ARG.length()));
+                }
+                else if (s.startsWith(MOVES_ARG)) {
+                    moves = Integer.parseInt(s.substring(MOVES_ARG.length()));
+                }
+                else if (s.startsWith(THREADS_ARG)) {
+                    threads = Integer.parseInt(s.substring(THREADS_ARG.length()));
+                }
+                else if (s.startsWith(SIZE_ARG)) {
+                    size = Integer.parseInt(s.substring(SIZE_ARG.length()));
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad numeric argument: " + e.getMessage(), e);
+        }
+        GameConfig config = GameConfig.withDensity(size, GameConfig.defaults().getDensity());
+        SessionManager manager = new SessionManager(threads, SessionManager.DEFAULT_TICK_MILLIS);
+        LoadGenerator generator = new LoadGenerator(manager, size, sessions, moves);
+        String[] ids = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            ids[i] = manager.createSession(config);
+        }
+        System.out.println("Running " + sessions + " sessions of " + moves + " moves on "
+                + threads + " threads, " + config);
+        long start = System.nanoTime();
+        SplittableRandom seeds = new SplittableRandom();
+        for (String id: ids) {
+            generator.play(id, moves, seeds.split());
+        }
+        generator.finished.await();
+        long elapsed = System.nanoTime() - start;
+        manager.shutdown(1000);
+        generator.report(elapsed);
+    }
+    
+    /**
+     * Make the next of a session's moves, then carry on once it completes.
+     * @param id
+     * @param remaining moves left to make.
+     * @param random this player's choices.
+     */
+    private void play(String id, int remaining, SplittableRandom random) {
+        if (remaining == 0) {
+            this.finished.countDown();
+            return;
+        }
+        int width = 2 * this.size - 1;
+        int x;
+        int y;
+        do {
+            x = random.nextInt(width);
+            y = random.nextInt(width);
+        } while (Math.abs(x - y) >= this.size);
+        int choice = random.nextInt(10);
+        Move move = choice < 7 ? Move.REVEAL
+                : choice < 9 ? Move.FLAG
+                : Move.CHORD;
+        long submitted = System.nanoTime();
+        CompletableFuture<GameState> next;
+        try {
+            next = this.manager.move(id, move, x, y).thenCompose(result -> {
+                this.latencies[this.recorded.getAndIncrement()] = System.nanoTime() - submitted;
+                return result.getState() != GameState.IN_PROGRESS
+                        ? this.manager.newGame(id)
+                        : CompletableFuture.completedFuture(result.getState());
+            });
+        }
+        catch (RuntimeException e) {
+            // Such as the session's executor refusing the move
+            next = new CompletableFuture<>();
+            next.completeExceptionally(e);
+        }
+        next.whenComplete((state, e) -> {
+            if (e == null) {
+                play(id, remaining - 1, random);
+            }
+            else {
+                // Give up on this player, but let the rest finish the run
+                Utils.log("Session " + id + " stopped: " + e, LoggerLevel.HIGH);
+                this.finished.countDown();
+            }
+        });
+    }
+    
+    /**
+     * Print the throughput and latency percentiles.
+     * @param elapsed nanoseconds taken by the whole run.
+     */
+    private void report(long elapsed) {
+        int count = this.recorded.get();
+        long[] sorted = Arrays.copyOf(this.latencies, count);
+        Arrays.sort(sorted);
+        System.out.printf("Moves: %d in %.2f s, %.0f moves/sec%n",
+                count, elapsed / 1e9, count / (elapsed / 1e9));
+        System.out.printf("Latency: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                percentile(sorted, 0.50) / 1e3, percentile(sorted, 0.99) / 1e3,
+                count == 0 ? 0.0 : sorted[count - 1] / 1e3);
+    }
+    
+    /**
+     * The value at a fraction of the way through sorted values.
+     * @param sorted
+     * @param fraction
+     * @return 
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import util.Utils;
+import util.Utils.LoggerLevel;
+
+/**
+ * Runs tasks one at a time, in the order given, on a shared Executor.
+ * <p> Each session has one of these, so its moves never run concurrently
+ * while many sessions share a small pool of threads. A task queued here
+ * happens-before the next one runs.</p>
+ * <p> If the shared Executor refuses a task, such as once it has been shut
+ * down, the task is kept at the head of the queue and the refusal is thrown
+ * to whoever queues a task next, rather than leaving the queue stalled.</p>
+ * @author Nick Smith
+ */
+class SerialExecutor implements Executor {
+    
+    /**
+     * Tasks waiting to run.
+     */
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    
+    /**
+     * Executor the tasks are run on.
+     */
+    private final Executor executor;
+    
+    /**
+     * Task currently handed to the executor, or null when idle.
+     */
+    private Runnable active;
+    
+    /**
+     * Construct a SerialExecutor running on the given Executor.
+     * @param executor 
+     */
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    
+    @Override
+    public synchronized void execute(Runnable r) {
+        this.tasks.add(() -> {
+            try {
+                r.run();
+            }
+            finally {
+                try {
+                    scheduleNext();
+                }
+                catch (RejectedExecutionException e) {
+                    // There is no caller to tell here; the next execute will
+                    Utils.log("Session task refused: " + e.getMessage(), LoggerLevel.HIGH);
+                }
+            }
+        });
+        if (this.active == null) {
+            try {
+                scheduleNext();
+            }
+            catch (RejectedExecutionException e) {
+                // The caller hears of it, so this task must not run later
+                this.tasks.removeLast();
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Hand the next waiting task to the executor, if there is one.
+     * @throws RejectedExecutionException if the executor refuses it, leaving
+     * it at the head of the queue and nothing active.
+     */
+    private synchronized void scheduleNext() {
+        this.active = this.tasks.poll();
+        if (this.active != null) {
+            try {
+                this.executor.execute(this.active);
+            }
+            catch (RejectedExecutionException e) {
+                this.tasks.addFirst(this.active);
+                this.active = null;
+                throw e;
+            }
+        }
+    }
+}
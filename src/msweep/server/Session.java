@@ -0,0 +1,77 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.server;
+
+import java.util.concurrent.Executor;
+import msweep.model.Clock;
+import msweep.model.GameConfig;
+import msweep.model.GameEngine;
+
+/**
+ * One player's game on a {@link SessionManager}.
+ * <p> The game is only touched by tasks run on the session's
+ * {@link SerialExecutor}, so it needs no locking of its own.</p>
+ * @author Nick Smith
+ */
+class Session {
+    
+    /**
+     * Configuration every game of this session is built from.
+     */
+    private final GameConfig config;
+    
+    /**
+     * Clock every game of this session is timed by.
+     */
+    private final Clock clock;
+    
+    /**
+     * Runs this session's tasks one at a time.
+     */
+    private final SerialExecutor executor;
+    
+    /**
+     * The current game, only used from tasks on the executor.
+     */
+    private GameEngine engine;
+    
+    /**
+     * Construct a session and its first game.
+     * @param config
+     * @param clock
+     * @param pool executor shared by all sessions.
+     */
+    Session(GameConfig config, Clock clock, Executor pool) {
+        this.config = config;
+        this.clock = clock;
+        this.executor = new SerialExecutor(pool);
+        this.engine = new GameEngine(config, clock, null);
+    }
+    
+    /**
+     * Replace the game with a new one of the same configuration. Must only
+     * be called from a task on the executor.
+     */
+    void newGame() {
+        this.engine = new GameEngine(this.config, this.clock, null);
+    }
+    
+    /**
+     * The current game. Must only be used from a task on the executor.
+     * @return 
+     */
+    GameEngine getEngine() {
+        return this.engine;
+    }
+    
+    /**
+     * Executor running this session's tasks one at a time.
+     * @return 
+     */
+    SerialExecutor getExecutor() {
+        return this.executor;
+    }
+}
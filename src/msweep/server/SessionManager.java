@@ -0,0 +1,190 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.server;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import msweep.model.GameConfig;
+import msweep.model.GameEngine;
+import msweep.model.GameState;
+import msweep.model.Move;
+import msweep.model.MoveResult;
+
+/**
+ * Hosts many concurrent games in one JVM, each in a session looked up by
+ * its id.
+ * <p> Every session runs its moves one at a time on its own
+ * {@link SerialExecutor}, and all sessions share a fixed pool of worker
+ * threads, so thousands of sessions need only as many threads as there are
+ * processors. Games are timed by a single {@link SharedClock} rather than a
+ * timer each. Moves are submitted from any thread and answered with a
+ * CompletableFuture, which fails if the move was invalid.</p>
+ * @author Nick Smith
+ */
+public class SessionManager {
+    
+    /**
+     * Default milliseconds between refreshes of the shared clock.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    
+    /**
+     * Every open session, by id.
+     */
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    
+    /**
+     * Worker threads shared by every session.
+     */
+    private final ExecutorService pool;
+    
+    /**
+     * Thread refreshing the shared clock.
+     */
+    private final ScheduledExecutorService scheduler;
+    
+    /**
+     * Clock every game is timed by.
+     */
+    private final SharedClock clock;
+    
+    /**
+     * Source of session ids.
+     */
+    private final AtomicLong nextId = new AtomicLong();
+    
+    /**
+     * Construct a manager with a worker thread per processor.
+     */
+    public SessionManager() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TICK_MILLIS);
+    }
+    
+    /**
+     * Construct a manager.
+     * @param threads number of worker threads shared by the sessions.
+     * @param tickMillis milliseconds between refreshes of the shared clock.
+     */
+    public SessionManager(int threads, long tickMillis) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Clock tick must be at least 1ms");
+        }
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "msweep-session-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "msweep-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.clock = new SharedClock(this.scheduler, tickMillis);
+    }
+    
+    /**
+     * Open a new session playing games of the given configuration.
+     * @param config
+     * @return the id of the new session.
+     */
+    public String createSession(GameConfig config) {
+        String id = Long.toString(this.nextId.getAndIncrement(), 36);
+        this.sessions.put(id, new Session(config, this.clock, this.pool));
+        return id;
+    }
+    
+    /**
+     * Close a session, discarding its game. Moves already submitted still
+     * run.
+     * @param id
+     * @return whether the session was open.
+     */
+    public boolean closeSession(String id) {
+        return this.sessions.remove(id) != null;
+    }
+    
+    /**
+     * Make a move in a session's game.
+     * @param id
+     * @param move
+     * @param x
+     * @param y
+     * @return the result of the move, once it has run.
+     */
+    public CompletableFuture<MoveResult> move(String id, Move move, int x, int y) {
+        return submit(id, engine -> move.apply(engine, x, y));
+    }
+    
+    /**
+     * Start a new game in a session, with the same configuration.
+     * @param id
+     * @return the state of the new game, once it has been created.
+     */
+    public CompletableFuture<GameState> newGame(String id) {
+        Session session = getSession(id);
+        return CompletableFuture.supplyAsync(() -> {
+            session.newGame();
+            return session.getEngine().getState();
+        }, session.getExecutor());
+    }
+    
+    /**
+     * Read from a session's game, in turn with its moves.
+     * @param <T>
+     * @param id
+     * @param query run against the game on the session's executor.
+     * @return the query's answer, once it has run.
+     */
+    public <T> CompletableFuture<T> submit(String id, Function<GameEngine, T> query) {
+        Session session = getSession(id);
+        return CompletableFuture.supplyAsync(() -> query.apply(session.getEngine()),
+                session.getExecutor());
+    }
+    
+    /**
+     * Number of open sessions.
+     * @return 
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+    
+    /**
+     * Stop the worker threads and the clock, waiting for running moves to
+     * finish. Moves still queued behind them are not run.
+     * @param timeoutMillis longest time to wait.
+     * @return whether the workers stopped in time.
+     * @throws InterruptedException 
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        this.scheduler.shutdownNow();
+        this.pool.shutdown();
+        return this.pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Find an open session.
+     * @param id
+     * @return 
+     */
+    private Session getSession(String id) {
+        Session session = this.sessions.get(id);
+        if (session == null) {
+            throw new IllegalArgumentException("No session with id " + id);
+        }
+        return session;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.server;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import msweep.model.Clock;
+
+/**
+ * A Clock shared by every game of a {@link SessionManager}, holding a
+ * timestamp refreshed at a fixed rate by one scheduled task.
+ * <p> Games read the timestamp rather than each needing a timer of their
+ * own, so the cost of keeping time doesn't grow with the number of games.
+ * Times are accurate to within one tick.</p>
+ * @author Nick Smith
+ */
+class SharedClock implements Clock {
+    
+    /**
+     * Most recent reading of {@link System#nanoTime}.
+     */
+    private volatile long now;
+    
+    /**
+     * Construct a clock and start refreshing it on the given scheduler.
+     * @param scheduler
+     * @param tickMillis milliseconds between refreshes.
+     */
+    SharedClock(ScheduledExecutorService scheduler, long tickMillis) {
+        this.now = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> this.now = System.nanoTime(),
+                tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public long nanoTime() {
+        return this.now;
+    }
+}
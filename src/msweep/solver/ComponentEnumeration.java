@@ -0,0 +1,620 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exact mine probabilities for every unknown cell, found by enumerating the
+ * mine layouts consistent with the constraints.
+ * <p> Frontier cells are split into components, joined where cells share a
+ * constraint. A component's layouts don't affect any other component's, so
+ * each is enumerated on its own, in parallel on a fork-join pool, with the
+ * top levels of each search forked again. Each enumeration tallies its
+ * layouts by how many mines they use; the tallies are then combined with
+ * the number of ways to place the remaining mines among the interior
+ * cells, giving the exact chance of each cell holding a mine.</p>
+ * @author Nick Smith
+ */
+class ComponentEnumeration {
+    
+    /**
+     * Largest component enumerated. Larger ones could take too long, so the
+     * estimate is used instead.
+     */
+    static final int MAX_COMPONENT_CELLS = 48;
+    
+    /**
+     * Most cells decided across every search of one enumeration. A weakly
+     * constrained component below {@link MAX_COMPONENT_CELLS} can still have
+     * billions of layouts, so past this the enumeration gives up and the
+     * estimate is used instead.
+     */
+    static final long MAX_NODES = 1L << 24;
+    
+    /**
+     * Number of cells a search decides between charging them to the shared
+     * budget.
+     */
+    private static final int NODE_BATCH = 1 << 12;
+    
+    /**
+     * Depth of each search down to which both branches are forked as
+     * separate tasks.
+     */
+    private static final int FORK_DEPTH = 4;
+    
+    /**
+     * Components with fewer cells than this are searched in one task.
+     */
+    private static final int MIN_FORK_CELLS = 16;
+    
+    private ComponentEnumeration() {
+    }
+    
+    /**
+     * Find the exact chance of each unknown cell holding a mine. A chance of
+     * exactly 0 or 1 is only given when it is certain.
+     * @param frontier
+     * @param pool pool the components are enumerated on.
+     * @return chance per index, meaningful only for unknown cells, or null if
+     * a component was too large to enumerate or the layouts took more than
+     * {@link MAX_NODES} steps to find.
+     */
+    static double[] probabilities(Frontier frontier, ForkJoinPool pool) {
+        List<Component> components = split(frontier);
+        for (Component component: components) {
+            if (component.cells.length > MAX_COMPONENT_CELLS) {
+                return null;
+            }
+        }
+        AtomicLong budget = new AtomicLong(MAX_NODES);
+        List<Search> searches = new ArrayList<>(components.size());
+        for (Component component: components) {
+            searches.add(new Search(component, frontier.remainingMines, budget));
+        }
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                ForkJoinTask.invokeAll(searches);
+                return null;
+            }
+        });
+        Tally[] tallies = new Tally[components.size()];
+        for (int i = 0; i < tallies.length; i++) {
+            tallies[i] = searches.get(i).join();
+        }
+        if (budget.get() < 0) {
+            // Some layouts were never visited, so the tallies are incomplete
+            return null;
+        }
+        return combine(frontier, components, tallies);
+    }
+    
+    /**
+     * Split the frontier cells into components joined by shared constraints.
+     * @param frontier
+     * @return 
+     */
+    private static List<Component> split(Frontier frontier) {
+        int[] parent = new int[frontier.unknown.length];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (Constraint c: frontier.constraints) {
+            for (int i = 1; i < c.cells.length; i++) {
+                parent[find(parent, c.cells[i])] = find(parent, c.cells[0]);
+            }
+        }
+        // Number the components by their roots, in index order
+        int[] componentOf = new int[parent.length];
+        Arrays.fill(componentOf, -1);
+        List<List<Integer>> cells = new ArrayList<>();
+        for (int cell = 0; cell < parent.length; cell++) {
+            if (!frontier.unknown[cell] || !frontier.isFrontier(cell)) {
+                continue;
+            }
+            int root = find(parent, cell);
+            if (componentOf[root] < 0) {
+                componentOf[root] = cells.size();
+                cells.add(new ArrayList<>());
+            }
+            cells.get(componentOf[root]).add(cell);
+        }
+        List<List<Constraint>> constraints = new ArrayList<>();
+        for (int i = 0; i < cells.size(); i++) {
+            constraints.add(new ArrayList<>());
+        }
+        for (Constraint c: frontier.constraints) {
+            constraints.get(componentOf[find(parent, c.cells[0])]).add(c);
+        }
+        List<Component> components = new ArrayList<>(cells.size());
+        for (int i = 0; i < cells.size(); i++) {
+            components.add(new Component(cells.get(i), constraints.get(i)));
+        }
+        return components;
+    }
+    
+    /**
+     * Root of a cell in the union-find forest, halving the path on the way.
+     * @param parent
+     * @param cell
+     * @return 
+     */
+    private static int find(int[] parent, int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+    
+    /**
+     * Combine the tallies of every component with the interior cells.
+     * <p> A choice of k_i mines in each component leaves
+     * {@code M - sum(k_i)} mines for the I interior cells, which can be
+     * placed in {@code C(I, M - sum(k_i))} ways. The tallies are convolved
+     * to count layouts by their total, once with every component and once
+     * leaving each component out, and each cell's count is weighted
+     * accordingly. Binomials are handled as logarithms, scaled by the
+     * largest, and each tally is scaled by its own largest count; every
+     * term has the same scale factors, so they cancel out.</p>
+     * @param frontier
+     * @param components
+     * @param tallies
+     * @return 
+     */
+    private static double[] combine(Frontier frontier, List<Component> components,
+            Tally[] tallies) {
+        int mines = frontier.remainingMines;
+        int interior = frontier.unknownCount - frontier.frontierCount;
+        double[] weight = interiorWeights(interior, mines);
+        double[][] scaled = new double[tallies.length][];
+        for (int i = 0; i < tallies.length; i++) {
+            scaled[i] = tallies[i].scaledCounts();
+        }
+        double[] all = {1.0};
+        for (double[] counts: scaled) {
+            all = convolve(all, counts, mines);
+        }
+        double total = 0.0;
+        double interiorMines = 0.0;
+        for (int k = 0; k < all.length; k++) {
+            total += all[k] * weight[k];
+            interiorMines += all[k] * weight[k] * (mines - k);
+        }
+        double[] probability = new double[frontier.unknown.length];
+        if (interior > 0) {
+            double chance = interiorMines / total / interior;
+            for (int cell = 0; cell < probability.length; cell++) {
+                if (frontier.unknown[cell] && !frontier.isFrontier(cell)) {
+                    probability[cell] = chance;
+                }
+            }
+        }
+        for (int i = 0; i < components.size(); i++) {
+            double[] others = {1.0};
+            for (int j = 0; j < scaled.length; j++) {
+                if (j != i) {
+                    others = convolve(others, scaled[j], mines);
+                }
+            }
+            Component component = components.get(i);
+            Tally tally = tallies[i];
+            double scale = tally.scale();
+            // Weight of every way to complete a layout using k mines here
+            double[] rest = new double[tally.counts.length];
+            for (int k = 0; k < rest.length; k++) {
+                for (int r = 0; r < others.length && k + r < weight.length; r++) {
+                    rest[k] += others[r] * weight[k + r];
+                }
+            }
+            for (int c = 0; c < component.cells.length; c++) {
+                double mine = 0.0;
+                double safe = 0.0;
+                for (int k = 0; k < tally.counts.length; k++) {
+                    long withMine = tally.cellCounts[c][k];
+                    mine += withMine / scale * rest[k];
+                    safe += (tally.counts[k] - withMine) / scale * rest[k];
+                }
+                double chance;
+                if (mine == 0.0) {
+                    chance = 0.0;
+                }
+                else if (safe == 0.0) {
+                    chance = 1.0;
+                }
+                else {
+                    chance = mine / (mine + safe);
+                }
+                probability[component.cells[c]] = chance;
+            }
+        }
+        return probability;
+    }
+    
+    /**
+     * Relative number of ways to place the mines left over from the
+     * frontier among the interior cells, by the number used on the frontier.
+     * @param interior number of interior cells.
+     * @param mines number of mines remaining in total.
+     * @return weight per number of frontier mines, up to {@code mines}.
+     */
+    private static double[] interiorWeights(int interior, int mines) {
+        double[] logWays = new double[mines + 1];
+        double largest = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k <= mines; k++) {
+            int left = mines - k;
+            logWays[k] = left > interior ? Double.NEGATIVE_INFINITY
+                    : logFactorial(interior) - logFactorial(left) - logFactorial(interior - left);
+            largest = Math.max(largest, logWays[k]);
+        }
+        double[] weight = new double[mines + 1];
+        for (int k = 0; k <= mines; k++) {
+            weight[k] = Math.exp(logWays[k] - largest);
+        }
+        return weight;
+    }
+    
+    /**
+     * Natural logarithm of n factorial.
+     * @param n
+     * @return 
+     */
+    private static double logFactorial(int n) {
+        double sum = 0.0;
+        for (int i = 2; i <= n; i++) {
+            sum += Math.log(i);
+        }
+        return sum;
+    }
+    
+    /**
+     * Count layouts of two independent parts by their total mines.
+     * @param a
+     * @param b
+     * @param limit largest total kept.
+     * @return 
+     */
+    private static double[] convolve(double[] a, double[] b, int limit) {
+        double[] result = new double[Math.min(limit + 1, a.length + b.length - 1)];
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == 0.0) {
+                continue;
+            }
+            for (int j = 0; j < b.length && i + j < result.length; j++) {
+                result[i + j] += a[i] * b[j];
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * A set of frontier cells joined by constraints, renumbered from zero.
+     */
+    private static class Component {
+        
+        /**
+         * Indices of the cells, in search order.
+         */
+        final int[] cells;
+        
+        /**
+         * For each constraint, the positions of its cells in {@link cells}.
+         */
+        final int[][] constraintCells;
+        
+        /**
+         * For each constraint, its number of mines.
+         */
+        final int[] constraintMines;
+        
+        /**
+         * For each cell, the constraints it is part of.
+         */
+        final int[][] cellConstraints;
+        
+        Component(List<Integer> cellList, List<Constraint> constraints) {
+            this.cells = new int[cellList.size()];
+            for (int i = 0; i < this.cells.length; i++) {
+                this.cells[i] = cellList.get(i);
+            }
+            this.constraintCells = new int[constraints.size()][];
+            this.constraintMines = new int[constraints.size()];
+            int[] linkCount = new int[this.cells.length];
+            for (int i = 0; i < constraints.size(); i++) {
+                Constraint c = constraints.get(i);
+                this.constraintMines[i] = c.mines;
+                this.constraintCells[i] = new int[c.cells.length];
+                for (int j = 0; j < c.cells.length; j++) {
+                    int position = Arrays.binarySearch(this.cells, c.cells[j]);
+                    this.constraintCells[i][j] = position;
+                    linkCount[position]++;
+                }
+            }
+            this.cellConstraints = new int[this.cells.length][];
+            for (int i = 0; i < this.cells.length; i++) {
+                this.cellConstraints[i] = new int[linkCount[i]];
+                linkCount[i] = 0;
+            }
+            for (int i = 0; i < this.constraintCells.length; i++) {
+                for (int position: this.constraintCells[i]) {
+                    this.cellConstraints[position][linkCount[position]++] = i;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Counts of a component's consistent layouts.
+     */
+    private static class Tally {
+        
+        /**
+         * Number of layouts by the number of mines they use.
+         */
+        final long[] counts;
+        
+        /**
+         * For each cell, the number of layouts with a mine there, by the
+         * number of mines they use.
+         */
+        final long[][] cellCounts;
+        
+        Tally(int cells, int maxMines) {
+            this.counts = new long[maxMines + 1];
+            this.cellCounts = new long[cells][maxMines + 1];
+        }
+        
+        /**
+         * Add another tally of the same component to this one.
+         * @param other 
+         */
+        void add(Tally other) {
+            for (int k = 0; k < this.counts.length; k++) {
+                this.counts[k] += other.counts[k];
+                for (int c = 0; c < this.cellCounts.length; c++) {
+                    this.cellCounts[c][k] += other.cellCounts[c][k];
+                }
+            }
+        }
+        
+        /**
+         * Largest count, used to keep the combined counts in range.
+         * @return 
+         */
+        double scale() {
+            long largest = 1;
+            for (long count: this.counts) {
+                largest = Math.max(largest, count);
+            }
+            return largest;
+        }
+        
+        /**
+         * Counts divided by {@link scale}.
+         * @return 
+         */
+        double[] scaledCounts() {
+            double scale = scale();
+            double[] scaled = new double[this.counts.length];
+            for (int k = 0; k < scaled.length; k++) {
+                scaled[k] = this.counts[k] / scale;
+            }
+            return scaled;
+        }
+    }
+    
+    /**
+     * Depth-first search over a component's layouts, from a partial layout.
+     * <p> Cells are given a value in order; a branch is cut as soon as a
+     * constraint has more mines than it allows, or too few unassigned cells
+     * left to reach its count. Every search of one enumeration shares a
+     * budget of cells to decide, and all of them stop once it is spent.</p>
+     */
+    private static class Search extends RecursiveTask<Tally> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final Component component;
+        
+        /**
+         * Most mines a layout may use.
+         */
+        private final int maxMines;
+        
+        /**
+         * Value of each cell decided so far: 1 for a mine.
+         */
+        private final byte[] layout;
+        
+        /**
+         * For each constraint, the mines placed in it so far.
+         */
+        private final int[] placed;
+        
+        /**
+         * For each constraint, its cells not yet decided.
+         */
+        private final int[] open;
+        
+        /**
+         * Position of the next cell to decide.
+         */
+        private final int next;
+        
+        /**
+         * Mines placed so far.
+         */
+        private final int mines;
+        
+        /**
+         * Cells left to decide, shared by every search of the enumeration;
+         * below zero once spent.
+         */
+        private final AtomicLong budget;
+        
+        /**
+         * Cells decided since the last were charged to the budget.
+         */
+        private int visited;
+        
+        /**
+         * Whether this search has seen the budget spent.
+         */
+        private boolean spent;
+        
+        /**
+         * Start a search of a whole component.
+         * @param component
+         * @param maxMines 
+         * @param budget cells left to decide, shared with the other searches.
+         */
+        Search(Component component, int maxMines, AtomicLong budget) {
+            this.component = component;
+            this.maxMines = maxMines;
+            this.budget = budget;
+            this.layout = new byte[component.cells.length];
+            this.placed = new int[component.constraintMines.length];
+            this.open = new int[component.constraintMines.length];
+            for (int i = 0; i < this.open.length; i++) {
+                this.open[i] = component.constraintCells[i].length;
+            }
+            this.next = 0;
+            this.mines = 0;
+        }
+        
+        /**
+         * Start a search from a copy of a partial layout.
+         * @param parent
+         * @param next position of the next cell to decide.
+         * @param mines mines placed so far.
+         */
+        private Search(Search parent, int next, int mines) {
+            this.component = parent.component;
+            this.maxMines = parent.maxMines;
+            this.budget = parent.budget;
+            this.layout = parent.layout.clone();
+            this.placed = parent.placed.clone();
+            this.open = parent.open.clone();
+            this.next = next;
+            this.mines = mines;
+        }
+        
+        @Override
+        protected Tally compute() {
+            int cells = this.component.cells.length;
+            if (cells >= MIN_FORK_CELLS && this.next < Math.min(FORK_DEPTH, cells)) {
+                // Fork each value of the next cell as its own search
+                Search safe = branch((byte) 0);
+                Search mine = branch((byte) 1);
+                Tally tally = new Tally(cells, this.maxMines);
+                if (safe != null && mine != null) {
+                    mine.fork();
+                    tally.add(safe.compute());
+                    tally.add(mine.join());
+                }
+                else if (safe != null) {
+                    tally.add(safe.compute());
+                }
+                else if (mine != null) {
+                    tally.add(mine.compute());
+                }
+                return tally;
+            }
+            Tally tally = new Tally(cells, this.maxMines);
+            search(this.next, this.mines, tally);
+            return tally;
+        }
+        
+        /**
+         * A search continuing with the next cell set to a value.
+         * @param value
+         * @return the search, or null if the value breaks a constraint.
+         */
+        private Search branch(byte value) {
+            if (!assign(this.next, value, this.mines)) {
+                unassign(this.next, value);
+                return null;
+            }
+            Search child = new Search(this, this.next + 1, this.mines + value);
+            unassign(this.next, value);
+            return child;
+        }
+        
+        /**
+         * Try every value of the remaining cells, tallying each complete
+         * layout.
+         * @param position
+         * @param mines
+         * @param tally 
+         */
+        private void search(int position, int mines, Tally tally) {
+            if (++this.visited == NODE_BATCH) {
+                this.visited = 0;
+                this.spent = this.budget.addAndGet(-NODE_BATCH) < 0;
+            }
+            if (this.spent) {
+                return;
+            }
+            if (position == this.layout.length) {
+                tally.counts[mines]++;
+                for (int c = 0; c < this.layout.length; c++) {
+                    if (this.layout[c] == 1) {
+                        tally.cellCounts[c][mines]++;
+                    }
+                }
+                return;
+            }
+            for (byte value = 0; value <= 1; value++) {
+                if (assign(position, value, mines)) {
+                    search(position + 1, mines + value, tally);
+                }
+                unassign(position, value);
+            }
+        }
+        
+        /**
+         * Give a cell a value, updating its constraints.
+         * @param position
+         * @param value
+         * @param mines mines placed before this cell.
+         * @return whether every constraint can still be met.
+         */
+        private boolean assign(int position, byte value, int mines) {
+            this.layout[position] = value;
+            boolean consistent = mines + value <= this.maxMines;
+            for (int c: this.component.cellConstraints[position]) {
+                this.placed[c] += value;
+                this.open[c]--;
+                int needed = this.component.constraintMines[c];
+                if (this.placed[c] > needed || this.placed[c] + this.open[c] < needed) {
+                    consistent = false;
+                }
+            }
+            return consistent;
+        }
+        
+        /**
+         * Undo {@link assign}.
+         * @param position
+         * @param value 
+         */
+        private void unassign(int position, byte value) {
+            this.layout[position] = 0;
+            for (int c: this.component.cellConstraints[position]) {
+                this.placed[c] -= value;
+                this.open[c]++;
+            }
+        }
+    }
+}
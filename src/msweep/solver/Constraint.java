@@ -0,0 +1,64 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+/**
+ * What a flipped tile says about its hidden neighbors: exactly
+ * {@link mines} of the {@link cells} hold a mine.
+ * @author Nick Smith
+ */
+class Constraint {
+    
+    /**
+     * Indices of the hidden, unflagged neighbors, in increasing order.
+     */
+    final int[] cells;
+    
+    /**
+     * Number of mines among the cells, the tile's count less the flags
+     * around it.
+     */
+    final int mines;
+    
+    /**
+     * Construct a constraint.
+     * @param cells indices of the hidden, unflagged neighbors, in increasing order.
+     * @param mines number of mines among them.
+     */
+    Constraint(int[] cells, int mines) {
+        this.cells = cells;
+        this.mines = mines;
+    }
+    
+    /**
+     * Determine whether the given cell is one of this constraint's.
+     * @param cell
+     * @return 
+     */
+    boolean contains(int cell) {
+        for (int c: this.cells) {
+            if (c == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Number of cells shared with another constraint.
+     * @param other
+     * @return 
+     */
+    int overlap(Constraint other) {
+        int shared = 0;
+        for (int c: this.cells) {
+            if (other.contains(c)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+}
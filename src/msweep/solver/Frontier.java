@@ -0,0 +1,426 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import msweep.model.GameEngine;
+import msweep.model.TileStore;
+
+/**
+ * Everything a player can see of a game, gathered into the constraints the
+ * flipped tiles put on the hidden ones, and the deductions made from them.
+ * <p> Tiles are indexed by {@code x * width + y}, leaving the indices of
+ * coordinates outside the hexagon unused. A hidden, unflagged tile is
+ * <i>unknown</i>; unknown tiles next to a flipped one are on the
+ * <i>frontier</i>, and the rest are <i>interior</i>.</p>
+ * <p> A solver keeps one frontier for a whole game and gathers it afresh
+ * each round with {@link gather}, so its arrays are allocated once rather
+ * than once a move.</p>
+ * @author Nick Smith
+ */
+class Frontier {
+    
+    /**
+     * Verdict of a cell nothing has been deduced about.
+     */
+    static final byte UNDECIDED = 0;
+    
+    /**
+     * Verdict of a cell deduced to be safe.
+     */
+    static final byte SAFE = 1;
+    
+    /**
+     * Verdict of a cell deduced to hold a mine.
+     */
+    static final byte MINE = 2;
+    
+    /**
+     * Most constraints a single cell can be part of, one per neighbor.
+     */
+    private static final int MAX_LINKS = 6;
+    
+    /**
+     * Number of tiles from center to an edge (including the center).
+     */
+    final int size;
+    
+    /**
+     * Width of the map, and stride of the indices.
+     */
+    final int width;
+    
+    /**
+     * Whether each index is an unknown tile.
+     */
+    final boolean[] unknown;
+    
+    /**
+     * Constraints from every flipped tile with an unknown neighbor.
+     */
+    final List<Constraint> constraints = new ArrayList<>();
+    
+    /**
+     * For each cell, the constraints it is part of, {@link MAX_LINKS} slots
+     * per cell.
+     */
+    private final int[] links;
+    
+    /**
+     * For each cell, the number of constraints it is part of.
+     */
+    private final byte[] linkCount;
+    
+    /**
+     * What has been deduced about each cell.
+     */
+    final byte[] verdict;
+    
+    /**
+     * Number of unknown tiles.
+     */
+    int unknownCount;
+    
+    /**
+     * Number of unknown tiles on the frontier.
+     */
+    int frontierCount;
+    
+    /**
+     * Number of mines not yet flagged.
+     */
+    int remainingMines;
+    
+    /**
+     * Number of cells given a verdict so far.
+     */
+    int decided;
+    
+    /**
+     * Construct an empty frontier for games of the given size.
+     * @param size number of tiles from center to an edge (including the center).
+     */
+    Frontier(int size) {
+        this.size = size;
+        this.width = 2 * this.size - 1;
+        int cells = this.width * this.width;
+        this.unknown = new boolean[cells];
+        this.links = new int[cells * MAX_LINKS];
+        this.linkCount = new byte[cells];
+        this.verdict = new byte[cells];
+    }
+    
+    /**
+     * Gather what can be seen of a game, replacing whatever was gathered
+     * before along with its verdicts. Flags on hidden tiles are trusted to
+     * be correct; a flag left on a flipped tile says nothing about mines.
+     * @param engine a game of this frontier's size.
+     */
+    void gather(GameEngine engine) {
+        if (engine.getSize() != this.size) {
+            throw new IllegalArgumentException("Game is not the frontier's size");
+        }
+        // Links past each cell's count are never read, so need no clearing
+        Arrays.fill(this.unknown, false);
+        Arrays.fill(this.linkCount, (byte) 0);
+        Arrays.fill(this.verdict, UNDECIDED);
+        this.constraints.clear();
+        this.unknownCount = 0;
+        this.frontierCount = 0;
+        this.decided = 0;
+        int flags = 0;
+        for (int x = 0; x < this.width; x++) {
+            int max = engine.rowMax(x);
+            for (int y = engine.rowMin(x); y <= max; y++) {
+                int display = engine.getTileDisplay(x, y);
+                if (display == GameEngine.DISPLAY_HIDDEN) {
+                    this.unknown[index(x, y)] = true;
+                    this.unknownCount++;
+                }
+                else if (display == GameEngine.DISPLAY_FLAGGED && engine.isTileHidden(x, y)) {
+                    flags++;
+                }
+            }
+        }
+        this.remainingMines = engine.getConfig().getMineCount() - flags;
+        int[] neighbors = new int[TileStore.NEIGHBOR_DX.length];
+        for (int x = 0; x < this.width; x++) {
+            int max = engine.rowMax(x);
+            for (int y = engine.rowMin(x); y <= max; y++) {
+                int count = engine.getTileDisplay(x, y);
+                if (count < 0) {
+                    continue;
+                }
+                int found = 0;
+                int mines = count;
+                for (int i = 0; i < TileStore.NEIGHBOR_DX.length; i++) {
+                    int nx = x + TileStore.NEIGHBOR_DX[i];
+                    int ny = y + TileStore.NEIGHBOR_DY[i];
+                    if (!engine.pointInRange(nx, ny)) {
+                        continue;
+                    }
+                    int n = index(nx, ny);
+                    if (this.unknown[n]) {
+                        neighbors[found++] = n;
+                    }
+                    else if (engine.getTileDisplay(nx, ny) == GameEngine.DISPLAY_FLAGGED
+                            && engine.isTileHidden(nx, ny)) {
+                        mines--;
+                    }
+                }
+                if (found > 0) {
+                    int[] cellsOf = Arrays.copyOf(neighbors, found);
+                    Arrays.sort(cellsOf);
+                    addConstraint(new Constraint(cellsOf, mines));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Index of the tile at the given coordinates.
+     * @param x
+     * @param y
+     * @return 
+     */
+    int index(int x, int y) {
+        return x * this.width + y;
+    }
+    
+    /**
+     * X coordinate of an index.
+     * @param index
+     * @return 
+     */
+    int xOf(int index) {
+        return index / this.width;
+    }
+    
+    /**
+     * Y coordinate of an index.
+     * @param index
+     * @return 
+     */
+    int yOf(int index) {
+        return index % this.width;
+    }
+    
+    /**
+     * Record a constraint, linking it from each of its cells.
+     * @param constraint 
+     */
+    private void addConstraint(Constraint constraint) {
+        int id = this.constraints.size();
+        this.constraints.add(constraint);
+        for (int cell: constraint.cells) {
+            if (this.linkCount[cell] == 0) {
+                this.frontierCount++;
+            }
+            this.links[cell * MAX_LINKS + this.linkCount[cell]++] = id;
+        }
+    }
+    
+    /**
+     * Number of constraints the cell is part of.
+     * @param cell
+     * @return 
+     */
+    int linkCount(int cell) {
+        return this.linkCount[cell];
+    }
+    
+    /**
+     * The i-th constraint the cell is part of.
+     * @param cell
+     * @param i
+     * @return 
+     */
+    Constraint link(int cell, int i) {
+        return this.constraints.get(this.links[cell * MAX_LINKS + i]);
+    }
+    
+    /**
+     * Determine whether an unknown cell is on the frontier.
+     * @param cell
+     * @return 
+     */
+    boolean isFrontier(int cell) {
+        return this.linkCount[cell] > 0;
+    }
+    
+    /**
+     * Give a cell a verdict, if it doesn't have one yet.
+     * @param cell
+     * @param value {@link SAFE} or {@link MINE}.
+     */
+    void decide(int cell, byte value) {
+        if (this.verdict[cell] == UNDECIDED) {
+            this.verdict[cell] = value;
+            this.decided++;
+        }
+    }
+    
+    /**
+     * Apply the rules which look at one constraint at a time: a constraint
+     * with no mines left makes all its cells safe, and one with as many
+     * mines as cells makes them all mines. The total number of mines is
+     * applied the same way to every unknown cell.
+     * @return number of new verdicts.
+     */
+    int applySingleRules() {
+        int before = this.decided;
+        for (Constraint c: this.constraints) {
+            if (c.mines == 0) {
+                decideAll(c.cells, SAFE);
+            }
+            else if (c.mines == c.cells.length) {
+                decideAll(c.cells, MINE);
+            }
+        }
+        if (this.remainingMines == 0 || this.remainingMines == this.unknownCount) {
+            byte value = this.remainingMines == 0 ? SAFE : MINE;
+            for (int cell = 0; cell < this.unknown.length; cell++) {
+                if (this.unknown[cell]) {
+                    decide(cell, value);
+                }
+            }
+        }
+        return this.decided - before;
+    }
+    
+    /**
+     * Apply the rules which compare two overlapping constraints A and B.
+     * <p> The mines shared by A and B number at least
+     * {@code max(0, A.mines - |A \ B|)} and at most
+     * {@code min(|A & B|, A.mines, B.mines)}. So B's own cells hold between
+     * {@code B.mines} less the most shared and {@code B.mines} less the
+     * least shared; if that is always zero they are safe, and if it is
+     * always all of them they are mines. When A is a subset of B this is the
+     * usual subset rule.</p>
+     * @return number of new verdicts.
+     */
+    int applyPairRules() {
+        int before = this.decided;
+        for (Constraint a: this.constraints) {
+            for (int cell: a.cells) {
+                int count = this.linkCount[cell];
+                for (int i = 0; i < count; i++) {
+                    Constraint b = link(cell, i);
+                    // Each pair only needs comparing through its first shared cell
+                    if (b == a || firstShared(a, b) != cell) {
+                        continue;
+                    }
+                    int shared = a.overlap(b);
+                    int aOnly = a.cells.length - shared;
+                    int bOnly = b.cells.length - shared;
+                    int mostShared = Math.min(shared, Math.min(a.mines, b.mines));
+                    int leastShared = Math.max(0, Math.max(a.mines - aOnly, b.mines - bOnly));
+                    if (bOnly > 0) {
+                        if (b.mines - leastShared == 0) {
+                            decideOnly(b, a, SAFE);
+                        }
+                        else if (b.mines - mostShared == bOnly) {
+                            decideOnly(b, a, MINE);
+                        }
+                    }
+                }
+            }
+        }
+        return this.decided - before;
+    }
+    
+    /**
+     * Lowest index shared by two constraints.
+     * @param a
+     * @param b
+     * @return the index, or -1 if they share none.
+     */
+    private static int firstShared(Constraint a, Constraint b) {
+        for (int cell: a.cells) {
+            if (b.contains(cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Give every cell the same verdict.
+     * @param cells
+     * @param value 
+     */
+    private void decideAll(int[] cells, byte value) {
+        for (int cell: cells) {
+            decide(cell, value);
+        }
+    }
+    
+    /**
+     * Give the cells of one constraint which aren't in another a verdict.
+     * @param target
+     * @param other
+     * @param value 
+     */
+    private void decideOnly(Constraint target, Constraint other, byte value) {
+        for (int cell: target.cells) {
+            if (!other.contains(cell)) {
+                decide(cell, value);
+            }
+        }
+    }
+    
+    /**
+     * Decide every unknown cell whose chance of holding a mine is certain.
+     * @param probability chance per index, exactly 0 or 1 only when certain.
+     * @return number of new verdicts.
+     */
+    int applyCertainties(double[] probability) {
+        int before = this.decided;
+        for (int cell = 0; cell < probability.length; cell++) {
+            if (!this.unknown[cell]) {
+                continue;
+            }
+            if (probability[cell] == 0.0) {
+                decide(cell, SAFE);
+            }
+            else if (probability[cell] == 1.0) {
+                decide(cell, MINE);
+            }
+        }
+        return this.decided - before;
+    }
+    
+    /**
+     * Estimate the chance of each unknown cell holding a mine, from the
+     * constraint giving it the highest chance, or the density of the
+     * remaining mines for interior cells.
+     * @return chance per index, meaningful only for unknown cells.
+     */
+    double[] estimateProbabilities() {
+        double[] probability = new double[this.unknown.length];
+        double density = this.unknownCount == 0 ? 0.0
+                : (double) this.remainingMines / this.unknownCount;
+        for (int cell = 0; cell < this.unknown.length; cell++) {
+            if (!this.unknown[cell]) {
+                continue;
+            }
+            int count = this.linkCount[cell];
+            if (count == 0) {
+                probability[cell] = density;
+                continue;
+            }
+            double highest = 0.0;
+            for (int i = 0; i < count; i++) {
+                Constraint c = link(cell, i);
+                highest = Math.max(highest, (double) c.mines / c.cells.length);
+            }
+            probability[cell] = highest;
+        }
+        return probability;
+    }
+}
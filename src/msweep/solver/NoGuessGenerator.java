@@ -0,0 +1,298 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+import java.util.OptionalLong;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import msweep.model.GameConfig;
+import msweep.model.GameEngine;
+import msweep.model.GameState;
+import util.Utils;
+import util.Utils.LoggerLevel;
+
+/**
+ * Generates boards which can be won without guessing, from a first click in
+ * the center of the map.
+ * <p> Candidate layouts are made from seeds derived from a base seed, and
+ * each is played by a {@link Solver} which gives up at the first guess it
+ * would need. Candidates are tried in parallel on a fork-join pool, and the
+ * first which is solved in seed order is kept, so the same base seed always
+ * gives the same board. A board is returned as its configuration with the
+ * candidate seed fixed, which builds exactly that layout once the center is
+ * revealed first.</p>
+ * <p> Once started, a background thread keeps a small pool of boards ready,
+ * so a new game can take one without waiting for a search.</p>
+ * @author Nick Smith
+ */
+public class NoGuessGenerator {
+
+    /**
+     * Number of boards kept ready by default.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    /**
+     * Number of candidates tried for a base seed before giving up.
+     */
+    public static final int MAX_ATTEMPTS = 1000000;
+
+    /**
+     * Number of searches in a row which may fail before the background
+     * thread gives up.
+     */
+    public static final int MAX_FAILURES = 3;
+
+    /**
+     * Milliseconds {@link take} waits at a time before checking the
+     * background thread is still running.
+     */
+    private static final long TAKE_CHECK_MILLIS = 100;
+
+    /**
+     * Step between the seeds of successive candidates, spreading them over
+     * the seed space.
+     */
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Configuration of the boards generated, each with its own seed.
+     */
+    private final GameConfig config;
+
+    /**
+     * Pool the candidates, and the solver's enumeration, are run on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Solver deciding whether a candidate needs a guess.
+     */
+    private final Solver solver;
+
+    /**
+     * Boards generated but not yet taken.
+     */
+    private final BlockingQueue<GameConfig> boards;
+
+    /**
+     * Number of candidates played so far.
+     */
+    private final AtomicLong attempts;
+
+    /**
+     * Thread keeping {@link boards} full, or null until started.
+     */
+    private Thread filler;
+
+    /**
+     * Whether {@link shutdown} has been called.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Construct a generator, which does nothing until used or started.
+     * @param config configuration of the boards to generate. Any seed is
+     * used as the start of the sequence of boards kept ready.
+     * @param poolSize number of boards to keep ready.
+     * @param threads number of threads candidates are tried on.
+     */
+    public NoGuessGenerator(GameConfig config, int poolSize, int threads) {
+        if (config.isChunked()) {
+            throw new IllegalArgumentException("Chunked fields have no mine count to solve with");
+        }
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("At least one board must be kept ready");
+        }
+        this.config = config;
+        this.pool = new ForkJoinPool(threads);
+        this.solver = new Solver(this.pool);
+        this.boards = new ArrayBlockingQueue<>(poolSize);
+        this.attempts = new AtomicLong();
+    }
+
+    /**
+     * Find the board which can be won without guessing for a base seed,
+     * waiting for the search.
+     * @param seed
+     * @return the board configuration, with its candidate seed fixed.
+     */
+    public GameConfig generate(long seed) {
+        OptionalLong found = this.pool.submit(() -> LongStream.range(0, MAX_ATTEMPTS)
+                .parallel()
+                .filter(i -> isNoGuess(candidate(seed, i)))
+                .findFirst()).join();
+        if (!found.isPresent()) {
+            throw new IllegalStateException("No board without guessing found for seed " + seed);
+        }
+        return candidate(seed, found.getAsLong());
+    }
+
+    /**
+     * Determine whether a board can be won from the center without guessing.
+     * @param board a configuration with a fixed number of mines.
+     * @return
+     */
+    public boolean isNoGuess(GameConfig board) {
+        this.attempts.incrementAndGet();
+        GameEngine engine = new GameEngine(board);
+        int center = engine.getSize() - 1;
+        return this.solver.solveWithoutGuessing(engine, center, center).getState() == GameState.WON;
+    }
+
+    /**
+     * Build the configuration of a candidate.
+     * @param seed base seed.
+     * @param attempt
+     * @return
+     */
+    private GameConfig candidate(long seed, long attempt) {
+        return this.config.withSeed(seed + attempt * SEED_STEP);
+    }
+
+    /**
+     * Start keeping boards ready in the background.
+     */
+    public synchronized void start() {
+        if (this.filler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        SplittableRandom random = this.config.hasSeed()
+                ? new SplittableRandom(this.config.getSeed()) : new SplittableRandom();
+        this.filler = new Thread(() -> fill(random), "no-guess-generator");
+        this.filler.setDaemon(true);
+        this.filler.start();
+    }
+
+    /**
+     * Generate boards until stopped, waiting whenever the pool is full.
+     * A search which fails is logged and the next base seed tried, unless
+     * {@link MAX_FAILURES} fail in a row.
+     * @param random source of base seeds.
+     */
+    private void fill(SplittableRandom random) {
+        int failures = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long started = System.nanoTime();
+                GameConfig board;
+                try {
+                    board = generate(random.nextLong());
+                }
+                catch (RuntimeException e) {
+                    if (this.stopped) {
+                        // A search cut short by shutdown is expected
+                        return;
+                    }
+                    failures++;
+                    Utils.log("No-guess search failed (" + failures + " in a row): " + e,
+                            LoggerLevel.HIGH);
+                    if (failures >= MAX_FAILURES) {
+                        Utils.log("Giving up generating no-guess boards", LoggerLevel.HIGH);
+                        return;
+                    }
+                    continue;
+                }
+                failures = 0;
+                Utils.log("No-guess board generated in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms",
+                        LoggerLevel.LOW);
+                this.boards.put(board);
+            }
+        }
+        catch (InterruptedException e) {
+            // Stopped by shutdown
+        }
+    }
+
+    /**
+     * Take a ready board without waiting.
+     * @return the board configuration, or null if none is ready.
+     */
+    public GameConfig poll() {
+        return this.boards.poll();
+    }
+
+    /**
+     * Take a ready board, waiting at most the given time for one to be
+     * generated. The generator must have been started.
+     * @param timeout
+     * @param unit
+     * @return the board configuration, or null if none was ready in time.
+     * @throws InterruptedException
+     */
+    public GameConfig poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (this.filler == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return this.boards.poll(timeout, unit);
+    }
+
+    /**
+     * Take a ready board, waiting for one to be generated if needed. The
+     * generator must have been started.
+     * @return the board configuration.
+     * @throws InterruptedException
+     * @throws IllegalStateException if no board is ready and the background
+     * thread has stopped, so none ever will be.
+     */
+    public GameConfig take() throws InterruptedException {
+        while (true) {
+            GameConfig board = poll(TAKE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            if (board != null) {
+                return board;
+            }
+            if (!this.filler.isAlive()) {
+                // Boards may have been added just before it stopped
+                board = this.boards.poll();
+                if (board == null) {
+                    throw new IllegalStateException("No-guess generator has stopped");
+                }
+                return board;
+            }
+        }
+    }
+
+    /**
+     * Get the configuration of the boards generated.
+     * @return
+     */
+    public GameConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Get the number of boards ready to be taken.
+     * @return
+     */
+    public int getReady() {
+        return this.boards.size();
+    }
+
+    /**
+     * Get the number of candidates played so far.
+     * @return
+     */
+    public long getAttempts() {
+        return this.attempts.get();
+    }
+
+    /**
+     * Stop generating boards and release the threads.
+     */
+    public synchronized void shutdown() {
+        this.stopped = true;
+        if (this.filler != null) {
+            this.filler.interrupt();
+        }
+        this.pool.shutdownNow();
+    }
+}
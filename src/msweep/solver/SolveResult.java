@@ -0,0 +1,143 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+import msweep.model.GameState;
+
+/**
+ * Immutable record of how a {@link Solver} played a game.
+ * @author Nick Smith
+ */
+public class SolveResult {
+    
+    /**
+     * State the game was left in.
+     */
+    private final GameState state;
+    
+    /**
+     * Number of moves made, including the first click and guesses.
+     */
+    private final int moves;
+    
+    /**
+     * Number of cells decided by looking at one constraint at a time.
+     */
+    private final int singleDeductions;
+    
+    /**
+     * Number of cells decided by comparing constraints.
+     */
+    private final int pairDeductions;
+    
+    /**
+     * Number of cells decided by enumerating every consistent layout.
+     */
+    private final int exactDeductions;
+    
+    /**
+     * Number of moves made without certainty, excluding the first click.
+     */
+    private final int guesses;
+    
+    /**
+     * Construct a result.
+     * @param state
+     * @param moves
+     * @param singleDeductions
+     * @param pairDeductions
+     * @param exactDeductions
+     * @param guesses 
+     */
+    SolveResult(GameState state, int moves, int singleDeductions, int pairDeductions,
+            int exactDeductions, int guesses) {
+        this.state = state;
+        this.moves = moves;
+        this.singleDeductions = singleDeductions;
+        this.pairDeductions = pairDeductions;
+        this.exactDeductions = exactDeductions;
+        this.guesses = guesses;
+    }
+    
+    /**
+     * State the game was left in.
+     * @return 
+     */
+    public GameState getState() {
+        return this.state;
+    }
+    
+    /**
+     * Determine whether the game was won.
+     * @return 
+     */
+    public boolean isSolved() {
+        return this.state == GameState.WON;
+    }
+    
+    /**
+     * Number of moves made, including the first click and guesses.
+     * @return 
+     */
+    public int getMoves() {
+        return this.moves;
+    }
+    
+    /**
+     * Number of cells decided by looking at one constraint at a time.
+     * @return 
+     */
+    public int getSingleDeductions() {
+        return this.singleDeductions;
+    }
+    
+    /**
+     * Number of cells decided by comparing constraints.
+     * @return 
+     */
+    public int getPairDeductions() {
+        return this.pairDeductions;
+    }
+    
+    /**
+     * Number of cells decided by enumerating every consistent layout.
+     * @return 
+     */
+    public int getExactDeductions() {
+        return this.exactDeductions;
+    }
+    
+    /**
+     * Number of moves made without certainty, excluding the first click.
+     * @return 
+     */
+    public int getGuesses() {
+        return this.guesses;
+    }
+    
+    /**
+     * How hard the game was to solve: 0 if single constraints were enough,
+     * 1 if constraints had to be compared, 2 if every layout had to be
+     * enumerated, and 3 if a guess was needed.
+     * @return 
+     */
+    public int getDifficulty() {
+        if (this.guesses > 0) {
+            return 3;
+        }
+        if (this.exactDeductions > 0) {
+            return 2;
+        }
+        return this.pairDeductions > 0 ? 1 : 0;
+    }
+    
+    @Override
+    public String toString() {
+        return this.state + " moves=" + this.moves + " single=" + this.singleDeductions
+                + " pair=" + this.pairDeductions + " exact=" + this.exactDeductions
+                + " guesses=" + this.guesses;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+import java.util.concurrent.ForkJoinPool;
+import msweep.model.GameEngine;
+import msweep.model.GameState;
+
+/**
+ * Plays a game to the end using only what a player could see.
+ * <p> Each round gathers the constraints the flipped tiles put on their
+ * hidden neighbors into a {@link Frontier}, and tries in turn: the rules
+ * looking at one constraint at a time, then the rules comparing two
+ * overlapping constraints. Every cell decided is then flipped or flagged.
+ * When nothing can be decided a guess is forced, and the cell least likely
+ * to hold a mine is flipped.</p>
+ * <p> Given a fork-join pool, the solver also enumerates every consistent
+ * layout with {@link ComponentEnumeration} before guessing. That finds the
+ * cells which are certain but beyond the simpler rules, and gives exact
+ * chances to guess from rather than estimates. Solvers hold no state
+ * between games, so one may solve many games at once.</p>
+ * @author Nick Smith
+ */
+public class Solver {
+    
+    /**
+     * Pool to enumerate layouts on, or null to only use the rules.
+     */
+    private final ForkJoinPool pool;
+    
+    /**
+     * Construct a solver using only the rules, guessing from estimates.
+     */
+    public Solver() {
+        this.pool = null;
+    }
+    
+    /**
+     * Construct a solver which enumerates layouts before guessing.
+     * @param pool pool the enumeration is run on.
+     */
+    public Solver(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("A pool is required");
+        }
+        this.pool = pool;
+    }
+    
+    /**
+     * Play a game from its first click in the center of the map.
+     * @param engine a game with a fixed number of mines, not yet played.
+     * @return 
+     */
+    public SolveResult solve(GameEngine engine) {
+        int center = engine.getSize() - 1;
+        return solve(engine, center, center);
+    }
+    
+    /**
+     * Play a game from a given first click.
+     * @param engine a game with a fixed number of mines.
+     * @param firstX
+     * @param firstY
+     * @return 
+     */
+    public SolveResult solve(GameEngine engine, int firstX, int firstY) {
+        return play(engine, firstX, firstY, true);
+    }
+    
+    /**
+     * Play a game from a given first click for as long as every move can be
+     * deduced, stopping instead of making the first guess.
+     * <p> This is the check for a board which can be won without guessing:
+     * the result is solved with no guesses exactly when it can. Boards which
+     * need a guess are given up on as soon as that is known.</p>
+     * @param engine a game with a fixed number of mines.
+     * @param firstX
+     * @param firstY
+     * @return the result so far, still in progress if a guess was needed.
+     */
+    public SolveResult solveWithoutGuessing(GameEngine engine, int firstX, int firstY) {
+        return play(engine, firstX, firstY, false);
+    }
+    
+    /**
+     * Play a game from a given first click.
+     * @param engine a game with a fixed number of mines.
+     * @param firstX
+     * @param firstY
+     * @param guessing whether to guess when nothing can be deduced, rather
+     * than stop.
+     * @return 
+     */
+    private SolveResult play(GameEngine engine, int firstX, int firstY, boolean guessing) {
+        if (engine.getConfig().isChunked()) {
+            throw new IllegalArgumentException("Chunked fields have no mine count to solve with");
+        }
+        int moves = 1;
+        int singleDeductions = 0;
+        int pairDeductions = 0;
+        int exactDeductions = 0;
+        int guesses = 0;
+        engine.reveal(firstX, firstY);
+        Frontier frontier = new Frontier(engine.getSize());
+        while (engine.getState() == GameState.IN_PROGRESS) {
+            frontier.gather(engine);
+            int found = frontier.applySingleRules();
+            if (found > 0) {
+                singleDeductions += found;
+            }
+            else {
+                found = frontier.applyPairRules();
+                pairDeductions += found;
+            }
+            double[] probability = null;
+            if (found == 0 && this.pool != null) {
+                probability = ComponentEnumeration.probabilities(frontier, this.pool);
+                if (probability != null) {
+                    found = frontier.applyCertainties(probability);
+                    exactDeductions += found;
+                }
+            }
+            if (found > 0) {
+                moves += play(engine, frontier);
+            }
+            else if (!guessing) {
+                break;
+            }
+            else {
+                guess(engine, frontier, probability != null
+                        ? probability : frontier.estimateProbabilities());
+                moves++;
+                guesses++;
+            }
+        }
+        return new SolveResult(engine.getState(), moves, singleDeductions, pairDeductions,
+                exactDeductions, guesses);
+    }
+    
+    /**
+     * Flip every cell deduced safe and flag every cell deduced a mine.
+     * @param engine
+     * @param frontier
+     * @return number of moves made.
+     */
+    private static int play(GameEngine engine, Frontier frontier) {
+        int moves = 0;
+        for (int cell = 0; cell < frontier.verdict.length; cell++) {
+            if (engine.getState() != GameState.IN_PROGRESS) {
+                break;
+            }
+            int x = frontier.xOf(cell);
+            int y = frontier.yOf(cell);
+            switch (frontier.verdict[cell]) {
+                case Frontier.SAFE:
+                    // An earlier flip may already have cascaded into it
+                    if (engine.getTileDisplay(x, y) == GameEngine.DISPLAY_HIDDEN) {
+                        engine.reveal(x, y);
+                        moves++;
+                    }
+                    break;
+                case Frontier.MINE:
+                    if (engine.getTileDisplay(x, y) == GameEngine.DISPLAY_HIDDEN) {
+                        engine.toggleFlag(x, y);
+                        moves++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return moves;
+    }
+    
+    /**
+     * Flip the unknown cell least likely to hold a mine.
+     * @param engine
+     * @param frontier
+     * @param probability chance per index of holding a mine.
+     */
+    private static void guess(GameEngine engine, Frontier frontier, double[] probability) {
+        int best = -1;
+        for (int cell = 0; cell < probability.length; cell++) {
+            if (frontier.unknown[cell] && (best < 0 || probability[cell] < probability[best])) {
+                best = cell;
+            }
+        }
+        engine.reveal(frontier.xOf(best), frontier.yOf(best));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.solver;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import msweep.model.GameConfig;
+import msweep.model.GameEngine;
+import msweep.model.MineParameters;
+
+/**
+ * Solves many boards and reports how many were solved per second, and how
+ * hard they were.
+ * <p> Run with
+ * {@code java -cp MsweepHex.jar msweep.solver.SolverBenchmark [boards=N]
+ * [size=N] [density=D] [seed=N] [exact] [threads=N]}. Board i is generated
+ * from seed + i, so runs can be repeated. {@code exact} enumerates layouts
+ * before guessing. Boards, and the components enumerated within each, are
+ * spread over a fork-join pool of the given number of threads.</p>
+ * @author Nick Smith
+ */
+public class SolverBenchmark {
+    
+    private static final String BOARDS_ARG = "boards=";
+    private static final String SIZE_ARG = "size=";
+    private static final String DENSITY_ARG = "density=";
+    private static final String SEED_ARG = "seed=";
+    private static final String EXACT_ARG = "exact";
+    private static final String THREADS_ARG = "threads=";
+    
+    private static final int DEFAULT_BOARDS = 10000;
+    
+    private SolverBenchmark() {
+    }
+    
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int boards = DEFAULT_BOARDS;
+        int size = MineParameters.DEFAULT_FIELD_SIZE;
+        double density = GameConfig.defaults().getDensity();
+        long seed = 0;
+        boolean exact = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (String s: args) {
+                if (s.equals(EXACT_ARG)) {
+                    exact = true;
+                }
+                else if (s.startsWith(THREADS_ARG)) {
+                    threads = Integer.parseInt(s.substring(THREADS_ARG.length()));
+                }
+                else if (s.startsWith(BOARDS_ARG)) {
+                    boards = Integer.parseInt(s.substring(BOARDS_ARG.length()));
+                }
+                else if (s.startsWith(SIZE_ARG)) {
+                    size = Integer.parseInt(s.substring(SIZE_ARG.length()));
+                }
+                else if (s.startsWith(DENSITY_ARG)) {
+                    density = Double.parseDouble(s.substring(DENSITY_ARG.length()));
+                }
+                else if (s.startsWith(SEED_ARG)) {
+                    seed = Long.parseLong(s.substring(SEED_ARG.length()));
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad numeric argument: " + e.getMessage(), e);
+        }
+        GameConfig config = GameConfig.withDensity(size, density)
+                .withWinRule(GameConfig.WinRule.EITHER);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Solver solver = exact ? new Solver(pool) : new Solver();
+        long firstSeed = seed;
+        int count = boards;
+        long start = System.nanoTime();
+        SolveResult[] results = pool.submit(() -> IntStream.range(0, count).parallel()
+                .mapToObj(i -> solver.solve(new GameEngine(config.withSeed(firstSeed + i))))
+                .toArray(SolveResult[]::new)).get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        int solved = 0;
+        long guesses = 0;
+        int[] difficulties = new int[4];
+        for (SolveResult result: results) {
+            if (result.isSolved()) {
+                solved++;
+            }
+            guesses += result.getGuesses();
+            difficulties[result.getDifficulty()]++;
+        }
+        System.out.println("Solved " + boards + " boards of " + config
+                + (exact ? " exactly" : "") + " on " + threads + " threads");
+        System.out.printf("%.0f boards/sec, %.1f%% won, %.2f guesses per board%n",
+                boards / seconds, 100.0 * solved / boards, (double) guesses / boards);
+        System.out.printf("Difficulty: single %d, pair %d, exact %d, guessed %d%n",
+                difficulties[0], difficulties[1], difficulties[2], difficulties[3]);
+    }
+}
@@ -9,16 +9,18 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.util.Observable;
 import java.util.Observer;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 import msweep.controller.MouseController;
+import msweep.model.ChangeSet;
+import msweep.model.GameConfig;
+import msweep.model.GameState;
 import msweep.model.MineField;
-import msweep.model.MineField.MineFieldState;
 import util.Utils;
 import util.Utils.LoggerLevel;
 
@@ -32,26 +34,47 @@ public class Board implements Observer {
     private static final int FRAME_HEIGHT = 700;
     
     /**
-     * Scaling for Polygons, must be >= 1.
+     * Initial scaling for Polygons, must be between {@link Viewport.MIN_SCALE}
+     * and {@link Viewport.MAX_SCALE}.
      */
     private static final int MAP_SCALE = 2;
     /**
-     * Offset for X-coordinates so the map is centered.
+     * Region of the panel the timer is drawn in.
      */
-    // for size 10
-    private static final int X_OFFSET = 200;
-    // for size 6
-    //private static final int X_OFFSET = 80;
+    private static final Rectangle TIMER_BOUNDS = new Rectangle(25, 10, 120, 30);
     /**
-     * Offset for Y-coordinates so the bottom tiles show in full.
+     * A move changing more than one in this many of the visible tiles redraws
+     * the whole field at once, rather than patching and repainting each tile.
      */
-    // for size 10
-    private static final int Y_OFFSET = 200;
-    // for size 6
-    //private static final int Y_OFFSET = 122; 
+    private static final int REDRAW_ALL_SHARE = 4;
+    /**
+     * Camera the map is seen through, centered on the map in
+     * {@link setConfig} and then panned and zoomed by the user.
+     */
+    private final Viewport viewport = new Viewport(MAP_SCALE, FRAME_HEIGHT);
+    /**
+     * Shape and position of every tile, taken from the viewport whenever the
+     * camera moves.
+     */
+    private HexGeometry geometry;
+    /**
+     * Pre-rendered tile images, built on the first paint after the geometry
+     * changes.
+     */
+    private SpriteAtlas sprites;
+    /**
+     * Offscreen image of the tiles, patched as they change.
+     */
+    private final FieldLayer fieldLayer = new FieldLayer();
     
     private final JFrame frame;
     private final MyPanel contents;
+    /**
+     * Repaints the timer at each whole second while a game is running. The
+     * time itself is read from the MineField, so this is the only thing
+     * ticking whichever MineField is shown.
+     */
+    private final Timer ticker;
     
     private boolean highlight;
     private Point highlightPoint;
@@ -72,19 +95,77 @@ public class Board implements Observer {
      */
     private MineField currentMineField;
     
-    public Board() {
+    /**
+     * Construct the view and its window.
+     * @param config configuration of the MineFields which will be drawn.
+     */
+    public Board(GameConfig config) {
         super();
         this.highlight = false;
+        setConfig(config);
         // Set frame/panel properties
+        ticker = new Timer(1000, e -> tick());
+        ticker.setRepeats(false);
         frame = new JFrame();
         frame.setSize(FRAME_WIDTH, FRAME_HEIGHT);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLocationRelativeTo(null);
-        frame.setResizable(false);
         contents = new MyPanel();
         contents.setVisible(true);
+        contents.setFocusable(true);
         frame.add(contents);
         frame.setVisible(true);
+        contents.requestFocusInWindow();
+    }
+    
+    /**
+     * Set the configuration of the MineFields drawn by this view, and center
+     * the map for its size.
+     * @param config 
+     */
+    public void setConfig(GameConfig config) {
+        // The panel has no size until it is first shown
+        if (this.contents != null && this.contents.getWidth() > 0) {
+            this.viewport.center(config.getSize(), this.contents.getWidth(),
+                    this.contents.getHeight());
+        }
+        else {
+            this.viewport.center(config.getSize(), FRAME_WIDTH, FRAME_HEIGHT);
+        }
+        this.geometry = this.viewport.getGeometry();
+        // Sprites and tiles are redrawn for the new geometry on the next paint
+        this.sprites = null;
+        this.fieldLayer.invalidate();
+    }
+    
+    /**
+     * Zoom the map in or out, keeping the tile under the given point of the
+     * panel in place.
+     * @param steps positive to zoom in, negative to zoom out.
+     * @param mouseX
+     * @param mouseY 
+     */
+    public void zoom(int steps, int mouseX, int mouseY) {
+        if (this.viewport.zoom(steps, mouseX, mouseY)) {
+            Utils.log("Zoomed to scale " + this.viewport.getScale(), LoggerLevel.LOW);
+            this.geometry = this.viewport.getGeometry();
+            this.sprites = null;
+            this.fieldLayer.invalidate();
+            this.contents.repaint();
+        }
+    }
+    
+    /**
+     * Move the map across the panel by the given number of pixels.
+     * @param dx
+     * @param dy 
+     */
+    public void pan(int dx, int dy) {
+        this.viewport.pan(dx, dy);
+        this.geometry = this.viewport.getGeometry();
+        // Sprites only depend on the scale, so only the tiles are redrawn
+        this.fieldLayer.invalidate();
+        this.contents.repaint();
     }
     
     /**
@@ -93,17 +174,32 @@ public class Board implements Observer {
      */
     public void setInitialMineField(MineField mf) {
         this.currentMineField = mf;
+        this.fieldLayer.invalidate();
+        this.contents.repaint();
+        updateTicker();
     }
     
     /**
      * Display a pop-up for when the user blows themselves up.
+     * @param undoable whether to offer to undo the last move.
+     * @return whether the user chose to undo it rather than reset.
      */
-    public void lostPopup() {
+    public boolean lostPopup(boolean undoable) {
         Utils.log("Displaying game lost popup", LoggerLevel.LOW);
-        JOptionPane.showMessageDialog(frame, 
-                "Continue to reset", 
+        if (!undoable) {
+            JOptionPane.showMessageDialog(frame, 
+                    "Continue to reset", 
+                    "You're dead!", 
+                    JOptionPane.OK_OPTION, null);
+            return false;
+        }
+        String[] options = {"Undo", "Reset"};
+        int choice = JOptionPane.showOptionDialog(frame, 
+                "Undo the last move, or reset", 
                 "You're dead!", 
-                JOptionPane.OK_OPTION, null);
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, 
+                null, options, options[0]);
+        return choice == 0;
     }
     
     /**
@@ -122,51 +218,133 @@ public class Board implements Observer {
         if (!(o instanceof MineField)) {
             throw new IllegalStateException("Bad Observable");
         }
-        this.currentMineField = (MineField) o;
-        this.contents.repaint();
-        
+        if (o != this.currentMineField) {
+            this.currentMineField = (MineField) o;
+            this.fieldLayer.invalidate();
+        }
+        updateTicker();
+        if (!(o1 instanceof ChangeSet) || ((ChangeSet) o1).isAllChanged()) {
+            this.fieldLayer.invalidate();
+            this.contents.repaint();
+            return;
+        }
+        ChangeSet changes = (ChangeSet) o1;
+        if (changes.size() > FieldLayer.countTiles(this.contents.getVisibleRect(),
+                this.currentMineField, this.geometry) / REDRAW_ALL_SHARE) {
+            // A large cascade, where one full redraw beats a repaint per tile
+            this.fieldLayer.invalidate();
+            this.contents.repaint();
+            return;
+        }
+        // Patch the offscreen tiles, and only repaint those which changed
+        if (this.sprites != null) {
+            this.fieldLayer.patch(changes, this.currentMineField, this.geometry, this.sprites);
+        }
+        else {
+            this.fieldLayer.invalidate();
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            repaintTile(changes.getX(i), changes.getY(i));
+        }
+        if (changes.isTimerChanged()) {
+            this.contents.repaint(TIMER_BOUNDS);
+        }
+    }
+    
+    /**
+     * Start the ticker when the game starts, and stop it once the game is
+     * over.
+     */
+    private void updateTicker() {
+        if (this.currentMineField == null || !this.currentMineField.isRunning()) {
+            this.ticker.stop();
+        }
+        else if (!this.ticker.isRunning()) {
+            scheduleTick();
+        }
+    }
+    
+    /**
+     * Set the ticker to fire when the time shown next changes.
+     */
+    private void scheduleTick() {
+        long elapsed = this.currentMineField.getElapsed();
+        this.ticker.setInitialDelay((int) (1000 - elapsed % 1000));
+        this.ticker.restart();
+    }
+    
+    /**
+     * Repaint the timer as a new second begins, and wait for the next.
+     */
+    private void tick() {
+        this.contents.repaint(TIMER_BOUNDS);
+        if (this.currentMineField != null && this.currentMineField.isRunning()) {
+            scheduleTick();
+        }
     }
     
     /**
      * Sets the flag for drawing a highlight, sets the point of
      * the highlight, and sets highlightType to {@link HighlightType.NONE}.
+     * Does nothing if that tile is already highlighted that way.
      * @param x
      * @param y 
      */
     public void highlightHover(int x, int y) {
+        if (isHighlighted(HighlightType.NONE, x, y)) {
+            return;
+        }
+        repaintHighlight();
         this.highlight = true;
         this.highlightType = HighlightType.NONE;
         this.highlightPoint = new Point(x, y);
+        repaintHighlight();
     }
     
     /**
      * Sets the flag for drawing a highlight, sets the point of
      * the highlight, and sets highlightType to {@link HighlightType.FLIP}.
+     * Does nothing if that tile is already highlighted that way.
      * @param x
      * @param y 
      */
     public void highlightFlip(int x, int y) {
+        if (isHighlighted(HighlightType.FLIP, x, y)) {
+            return;
+        }
+        repaintHighlight();
         this.highlight = true;
         this.highlightType = HighlightType.FLIP;
         this.highlightPoint = new Point(x, y);
+        repaintHighlight();
     }
     
     /**
      * Sets the flag for drawing a highlight, sets the point of
      * the highlight, and sets highlightType to {@link HighlightType.FLAG}.
+     * Does nothing if that tile is already highlighted that way.
      * @param x
      * @param y 
      */
     public void highlightFlag(int x, int y) {
+        if (isHighlighted(HighlightType.FLAG, x, y)) {
+            return;
+        }
+        repaintHighlight();
         this.highlight = true;
         this.highlightType = HighlightType.FLAG;
         this.highlightPoint = new Point(x, y);
+        repaintHighlight();
     }
     
     /**
      * Removes the highlight.
      */
     public void removeHighlight() {
+        if (!this.highlight) {
+            return;
+        }
+        repaintHighlight();
         this.highlight = false;
     }
     
@@ -184,17 +362,47 @@ public class Board implements Observer {
      * @param y 
      */
     public void setHighlightPoint(int x, int y) {
+        if (isHighlighted(this.highlightType, x, y)) {
+            return;
+        }
+        repaintHighlight();
         this.highlightPoint = new Point(x, y);
+        repaintHighlight();
+    }
+    
+    /**
+     * Determine whether the tile is already highlighted in the given way, so
+     * repeated mouse events over the same tile can be ignored.
+     * @param type
+     * @param x
+     * @param y
+     * @return 
+     */
+    private boolean isHighlighted(HighlightType type, int x, int y) {
+        return this.highlight && this.highlightType == type
+                && this.highlightPoint.x == x && this.highlightPoint.y == y;
+    }
+    
+    /**
+     * Schedule a repaint of the highlighted tile, if there is one.
+     */
+    private void repaintHighlight() {
+        if (this.highlight) {
+            repaintTile(this.highlightPoint.x, this.highlightPoint.y);
+        }
     }
     
     /**
      * Draw all of the elements on the given Graphics2D object.
+     * <p> The timer and highlight are cheap overlays drawn directly, while the
+     * tiles are copied from the offscreen {@link FieldLayer}. The timer is
+     * drawn last so the map can be panned underneath it.</p>
      * @param g2d 
      */
     private void draw(Graphics2D g2d) {
-        drawTimer(g2d);
         drawHighlight(g2d);
         drawMineField(g2d);
+        drawTimer(g2d);
     }
     
     /**
@@ -203,10 +411,12 @@ public class Board implements Observer {
      */
     private void drawTimer(Graphics2D g2d) {
         if (this.currentMineField == null) return;
-        if (this.currentMineField.getState() != MineFieldState.IN_PROGRESS) {
+        if (this.currentMineField.getState() != GameState.IN_PROGRESS) {
             g2d.setColor(Color.red);
         }
-        g2d.drawString(this.currentMineField.getTime().toString(), 30, 30);
+        long seconds = this.currentMineField.getElapsed() / 1000;
+        g2d.drawString(String.format("%02d:%02d:%02d",
+                seconds / 3600, seconds / 60 % 60, seconds % 60), 30, 30);
         g2d.setColor(Color.black);
     }
     
@@ -217,26 +427,23 @@ public class Board implements Observer {
     private void drawHighlight(Graphics2D g2d) {
         // Make sure the flag is set
         if (this.highlight) {
-            Polygon highlighted = this.getPolygon(highlightPoint.x, highlightPoint.y);
+            int originX = this.geometry.originX(highlightPoint.x);
+            int originY = this.geometry.originY(highlightPoint.x, highlightPoint.y);
             if (this.highlightType == HighlightType.NONE) {
                 g2d.setColor(Color.yellow);
             }
             else {
                 g2d.setColor(Color.orange);
             }
-            g2d.fillPolygon(highlighted);
+            g2d.translate(originX, originY);
+            g2d.fillPolygon(this.geometry.getTemplate());
             g2d.setColor(Color.black);
-            Rectangle labelContainer = highlighted.getBounds();
             switch (this.highlightType) {
                 case FLIP:
-                    g2d.drawString("?", 
-                        (int) ((labelContainer.getMaxX() + labelContainer.getMinX()) / 2), 
-                        (int) ((labelContainer.getMaxY() + labelContainer.getMinY()) / 2));
+                    g2d.drawString("?", this.geometry.labelX(), this.geometry.labelY());
                     break;
                 case FLAG:
-                    g2d.drawString("!", 
-                        (int) ((labelContainer.getMaxX() + labelContainer.getMinX()) / 2), 
-                        (int) ((labelContainer.getMaxY() + labelContainer.getMinY()) / 2));
+                    g2d.drawString("!", this.geometry.labelX(), this.geometry.labelY());
                     break;
                 case NONE:
                     // No label here
@@ -244,130 +451,67 @@ public class Board implements Observer {
                 default:
                     throw new IllegalStateException("Invalid highlight type found");
             }
-            
+            g2d.translate(-originX, -originY);
             
             g2d.setColor(Color.black);
         }
     }
     
     /**
-     * Draw the MineField on the given Graphics2D object.
+     * Draw the MineField on the given Graphics2D object, copying the part
+     * within the clip from the offscreen tiles (drawn first if needed).
      * @param g2d 
      */
     private void drawMineField(Graphics2D g2d) {
         if (this.currentMineField == null) return;
-        Point[] tiles = this.currentMineField.getTilePoints();
-        for (Point p: tiles) {
-            Polygon drawnTile = getPolygon(p.x, p.y);
-            Rectangle labelContainer = drawnTile.getBounds();
-            String value = this.currentMineField.getTileValue(p.x, p.y);
-            switch (value) {
-                case "*":
-                    g2d.setColor(Color.red);
-                    g2d.fillPolygon(drawnTile);
-                    g2d.setColor(Color.black);
-                    break;
-                case "!":
-                    g2d.setColor(Color.pink);
-                    g2d.fillPolygon(drawnTile);
-                    g2d.setColor(Color.black);
-                    break;
-            // No fill
-                case " ":
-                    break;
-                default:
-                    int count = Integer.parseInt(value);
-                    switch (count) {
-                        case 0:
-                            // No fill
-                            g2d.setColor(Color.white);
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                        case 1:
-                            g2d.setColor(new Color(191, 175, 32));
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                        case 2:
-                            g2d.setColor(new Color(191, 135, 32));
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                        case 3:
-                            g2d.setColor(new Color(191, 115, 32));
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                        case 4:
-                            g2d.setColor(new Color(191, 100, 32));
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                        case 5:
-                            g2d.setColor(new Color(191, 90, 32));
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                        case 6:
-                            g2d.setColor(new Color(191, 70, 32));
-                            g2d.fillPolygon(drawnTile);
-                            break;
-                    }   break;
-            }
-            g2d.setColor(Color.black);
-            g2d.drawPolygon(drawnTile);
-            g2d.drawString(value, 
-                    (int) ((labelContainer.getMaxX() + labelContainer.getMinX()) / 2), 
-                    (int) ((labelContainer.getMaxY() + labelContainer.getMinY()) / 2));
+        if (this.sprites == null || !this.sprites.getFont().equals(g2d.getFont())) {
+            this.sprites = new SpriteAtlas(this.geometry, g2d.getFont());
+            this.fieldLayer.invalidate();
         }
+        int width = this.contents.getWidth();
+        int height = this.contents.getHeight();
+        if (width <= 0 || height <= 0) return;
+        if (!this.fieldLayer.isValid(width, height)) {
+            this.fieldLayer.rebuild(this.contents.getGraphicsConfiguration(), width, height,
+                    this.currentMineField, this.geometry, this.sprites);
+        }
+        g2d.drawImage(this.fieldLayer.getImage(), 0, 0, null);
     }
     
     /**
-     * Get the Polygon object corresponding to the map coordinates.
+     * Schedule a repaint of the region of the panel covered by the tile at
+     * the map coordinates, including its outline.
      * @param xcoord
      * @param ycoord
-     * @return 
      */
-    private Polygon getPolygon(int xcoord, int ycoord) {
-        
-        // The ratios we need to get good hexes
-        int baseX =  14 * xcoord;
-        int baseY = (16 * ycoord - 8 * xcoord);
-        // Arrays of coordinates, scaled to desired size
-        int[] xs = {(baseX + 4) * MAP_SCALE, (baseX + 14) * MAP_SCALE, 
-            (baseX + 18) * MAP_SCALE, (baseX + 14) * MAP_SCALE, 
-            (baseX + 4) * MAP_SCALE, baseX * MAP_SCALE};
-        int[] ys = {baseY * MAP_SCALE, baseY * MAP_SCALE, 
-            (baseY + 8) * MAP_SCALE, (baseY + 16) * MAP_SCALE, 
-            (baseY + 16) * MAP_SCALE, (baseY + 8) * MAP_SCALE};
-        // Reverse ys (bottom is zero coordinate), adjust by offset
-        for (int i = 0; i < ys.length; i++) {
-            ys[i] = FRAME_HEIGHT - ys[i] - Y_OFFSET;
-        }
-        // Adjust xs by offset
-        for (int i = 0; i < xs.length; i++) {
-            xs[i] += X_OFFSET;
-        }
-        return new Polygon(xs, ys, 6);
+    private void repaintTile(int xcoord, int ycoord) {
+        this.contents.repaint(this.geometry.originX(xcoord),
+                this.geometry.originY(xcoord, ycoord),
+                this.geometry.tileWidth(), this.geometry.tileHeight());
     }
     
     /**
      * Get the corresponding MineField coordinates from mouse coordinates.
      * @param mouseX
      * @param mouseY
-     * @return 
+     * @param coords set to the MineField coordinates when a tile is found,
+     * otherwise left in an unspecified state.
+     * @return whether the mouse is over a tile of the MineField.
+     */
+    public boolean getCoords(int mouseX, int mouseY, Point coords) {
+        this.geometry.pick(mouseX, mouseY, coords);
+        return this.currentMineField.pointInRange(coords.x, coords.y);
+    }
+    
+    /**
+     * Get the corresponding MineField coordinates from mouse coordinates.
+     * @param mouseX
+     * @param mouseY
+     * @return the coordinates, or null when the mouse is not over a tile.
      */
     public Point getCoords(int mouseX, int mouseY) {
-        // Get the set of Polygons, and figure out which one contains the point
-        int xApproximation = (mouseX - X_OFFSET) / (14 * MAP_SCALE);
-        int yApproximation = ((FRAME_HEIGHT - (mouseY + Y_OFFSET)) + (xApproximation * 8 * MAP_SCALE)) / (16 * MAP_SCALE);
-        // Use the approximations
-        for (int x = xApproximation - 1; x <= xApproximation + 1; x++) {
-            for (int y = yApproximation - 1; y <= yApproximation + 1; y++) {
-                if (this.currentMineField.pointInRange(x, y)) {
-                    Point p = new Point(mouseX, mouseY);
-                    if (getPolygon(x, y).contains(p)) {
-                        return new Point(x, y);
-                    }
-                }
-            }
-        }
-        return null;
+        Point coords = new Point();
+        return getCoords(mouseX, mouseY, coords) ? coords : null;
     }
     
     /**
@@ -377,6 +521,8 @@ public class Board implements Observer {
     public void addController(MouseController controller) {
         this.contents.addMouseListener(controller);
         this.contents.addMouseMotionListener(controller);
+        this.contents.addMouseWheelListener(controller);
+        this.contents.addKeyListener(controller);
     }
     
     /**
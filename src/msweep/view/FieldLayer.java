@@ -0,0 +1,193 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.view;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import msweep.model.ChangeSet;
+import msweep.model.MineField;
+
+/**
+ * Persistent offscreen image of every tile of the MineField.
+ * <p> The image is drawn in full once, then patched a tile at a time as the
+ * MineField reports changes, so a paint of the panel only has to copy the
+ * needed part of it. Everything outside the tiles (and the inside of hidden
+ * tiles) is left transparent, so layers drawn underneath still show
+ * through.</p>
+ * @author Nick Smith
+ */
+class FieldLayer {
+    
+    /**
+     * Offsets of a tile and its six neighbors, in the order the full
+     * drawing visits them, so overlapping edges blend the same way.
+     */
+    private static final int[] PATCH_DX = {-1, -1, 0, 0, 0, 1, 1};
+    private static final int[] PATCH_DY = {-1, 0, -1, 0, 1, 0, 1};
+    
+    /**
+     * The offscreen image, null until first built.
+     */
+    private BufferedImage image;
+    
+    /**
+     * Whether the image matches the MineField.
+     */
+    private boolean valid;
+    
+    /**
+     * Mark the image as needing to be drawn in full again.
+     */
+    void invalidate() {
+        this.valid = false;
+    }
+    
+    /**
+     * Determine whether the image matches the MineField and has the given
+     * size.
+     * @param width
+     * @param height
+     * @return 
+     */
+    boolean isValid(int width, int height) {
+        return this.valid && this.image != null
+                && this.image.getWidth() == width && this.image.getHeight() == height;
+    }
+    
+    /**
+     * The offscreen image, only meaningful while valid.
+     * @return 
+     */
+    BufferedImage getImage() {
+        return this.image;
+    }
+    
+    /**
+     * Draw every tile into a fresh image of the given size.
+     * @param gc configuration to make the image compatible with.
+     * @param width
+     * @param height
+     * @param field
+     * @param geometry
+     * @param sprites 
+     */
+    void rebuild(GraphicsConfiguration gc, int width, int height, MineField field,
+            HexGeometry geometry, SpriteAtlas sprites) {
+        if (this.image == null || this.image.getWidth() != width
+                || this.image.getHeight() != height) {
+            this.image = gc != null
+                    ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g2d = this.image.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        drawTiles(g2d, new Rectangle(0, 0, width, height), field, geometry, sprites);
+        g2d.dispose();
+        this.valid = true;
+    }
+    
+    /**
+     * Redraw the changed tiles into the image.
+     * <p> Each changed tile's bounds are cleared and redrawn along with its
+     * six neighbors, which are the only tiles overlapping those bounds.</p>
+     * @param changes
+     * @param field
+     * @param geometry
+     * @param sprites 
+     */
+    void patch(ChangeSet changes, MineField field, HexGeometry geometry, SpriteAtlas sprites) {
+        if (!this.valid) {
+            return;
+        }
+        Graphics2D g2d = this.image.createGraphics();
+        int tileWidth = geometry.tileWidth();
+        int tileHeight = geometry.tileHeight();
+        for (int i = 0; i < changes.size(); i++) {
+            int x = changes.getX(i);
+            int y = changes.getY(i);
+            g2d.setClip(geometry.originX(x), geometry.originY(x, y), tileWidth, tileHeight);
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(geometry.originX(x), geometry.originY(x, y), tileWidth, tileHeight);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            for (int n = 0; n < PATCH_DX.length; n++) {
+                int nx = x + PATCH_DX[n];
+                int ny = y + PATCH_DY[n];
+                if (field.pointInRange(nx, ny)) {
+                    drawTile(g2d, field, geometry, sprites, nx, ny);
+                }
+            }
+        }
+        g2d.dispose();
+    }
+    
+    /**
+     * Copy the image of every tile which lies within the clip.
+     * <p> Only the columns and rows the clip can reach are visited, so the
+     * cost depends on the size of the clip rather than of the MineField.</p>
+     * @param g2d
+     * @param clip region to draw.
+     * @param field
+     * @param geometry
+     * @param sprites 
+     */
+    static void drawTiles(Graphics2D g2d, Rectangle clip, MineField field,
+            HexGeometry geometry, SpriteAtlas sprites) {
+        int firstColumn = Math.max(0, geometry.firstColumn(clip.x));
+        int lastColumn = Math.min(2 * field.getSize() - 2,
+                geometry.lastColumn(clip.x + clip.width));
+        for (int x = firstColumn; x <= lastColumn; x++) {
+            int originX = geometry.originX(x);
+            int min = Math.max(field.rowMin(x), geometry.firstRow(x, clip.y + clip.height));
+            int max = Math.min(field.rowMax(x), geometry.lastRow(x, clip.y));
+            for (int y = min; y <= max; y++) {
+                g2d.drawImage(sprites.get(field.getTileDisplay(x, y)),
+                        originX, geometry.originY(x, y), null);
+            }
+        }
+    }
+    
+    /**
+     * Count the tiles which lie within the clip, visiting them the same way
+     * as {@link drawTiles}.
+     * @param clip
+     * @param field
+     * @param geometry
+     * @return 
+     */
+    static int countTiles(Rectangle clip, MineField field, HexGeometry geometry) {
+        int firstColumn = Math.max(0, geometry.firstColumn(clip.x));
+        int lastColumn = Math.min(2 * field.getSize() - 2,
+                geometry.lastColumn(clip.x + clip.width));
+        int count = 0;
+        for (int x = firstColumn; x <= lastColumn; x++) {
+            int min = Math.max(field.rowMin(x), geometry.firstRow(x, clip.y + clip.height));
+            int max = Math.min(field.rowMax(x), geometry.lastRow(x, clip.y));
+            count += Math.max(0, max - min + 1);
+        }
+        return count;
+    }
+    
+    /**
+     * Copy the image of a single tile.
+     * @param g2d
+     * @param field
+     * @param geometry
+     * @param sprites
+     * @param x
+     * @param y 
+     */
+    private static void drawTile(Graphics2D g2d, MineField field, HexGeometry geometry,
+            SpriteAtlas sprites, int x, int y) {
+        g2d.drawImage(sprites.get(field.getTileDisplay(x, y)),
+                geometry.originX(x), geometry.originY(x, y), null);
+    }
+}
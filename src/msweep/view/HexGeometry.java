@@ -0,0 +1,233 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.view;
+
+import java.awt.Point;
+import java.awt.Polygon;
+
+/**
+ * Cached geometry of the hexagons drawn by a {@link Board}.
+ * <p> Every hexagon is the same shape, moved along a lattice of 14 units per
+ * column and 16 units per row (the row shifted down 8 units per column).
+ * Rather than building a Polygon for every tile, a single template polygon
+ * is kept with its top left corner at the origin, and the position of any
+ * tile is worked out with a few multiplications.</p>
+ * @author Nick Smith
+ */
+class HexGeometry {
+    
+    /**
+     * Scaling of the lattice units into pixels.
+     */
+    private final int scale;
+    
+    /**
+     * Pixel offset added to every x coordinate.
+     */
+    private final int xOffset;
+    
+    /**
+     * Pixel offset subtracted from every y coordinate.
+     */
+    private final int yOffset;
+    
+    /**
+     * Height the y axis is reversed against, so row zero is at the bottom.
+     */
+    private final int height;
+    
+    /**
+     * The hexagon outline, relative to its top left corner.
+     */
+    private final Polygon template;
+    
+    /**
+     * Construct the geometry for a given scale and placement.
+     * @param scale scaling of the lattice units into pixels, must be >= 1.
+     * @param xOffset pixel offset added to every x coordinate.
+     * @param yOffset pixel offset subtracted from every y coordinate.
+     * @param height height the y axis is reversed against.
+     */
+    HexGeometry(int scale, int xOffset, int yOffset, int height) {
+        this.scale = scale;
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+        this.height = height;
+        int[] xs = {4 * scale, 14 * scale, 18 * scale, 14 * scale, 4 * scale, 0};
+        int[] ys = {16 * scale, 16 * scale, 8 * scale, 0, 0, 8 * scale};
+        this.template = new Polygon(xs, ys, 6);
+    }
+    
+    /**
+     * Pixel x coordinate of the left edge of the tile in the given column.
+     * @param xcoord
+     * @return 
+     */
+    int originX(int xcoord) {
+        return 14 * xcoord * this.scale + this.xOffset;
+    }
+    
+    /**
+     * Pixel y coordinate of the top edge of the tile at the map coordinates.
+     * @param xcoord
+     * @param ycoord
+     * @return 
+     */
+    int originY(int xcoord, int ycoord) {
+        return this.height - (16 * ycoord - 8 * xcoord + 16) * this.scale - this.yOffset;
+    }
+    
+    /**
+     * Width in pixels of a tile, including its outline.
+     * @return 
+     */
+    int tileWidth() {
+        return 18 * this.scale + 1;
+    }
+    
+    /**
+     * Height in pixels of a tile, including its outline.
+     * @return 
+     */
+    int tileHeight() {
+        return 16 * this.scale + 1;
+    }
+    
+    /**
+     * X position of a tile's label, relative to its top left corner.
+     * @return 
+     */
+    int labelX() {
+        return 9 * this.scale;
+    }
+    
+    /**
+     * Y position of a tile's label baseline, relative to its top left corner.
+     * @return 
+     */
+    int labelY() {
+        return 8 * this.scale;
+    }
+    
+    /**
+     * The hexagon outline with its top left corner at the origin. Must not be
+     * modified.
+     * @return 
+     */
+    Polygon getTemplate() {
+        return this.template;
+    }
+    
+    /**
+     * Scaling of the lattice units into pixels.
+     * @return 
+     */
+    int getScale() {
+        return this.scale;
+    }
+    
+    /**
+     * Find the map coordinates of the tile containing a pixel, following the
+     * same rules for pixels on an edge as {@link Polygon#contains}.
+     * <p> The pixel's column of the lattice gives one candidate tile, and the
+     * row within that column follows from the vertical offset. Only in the
+     * leftmost 4 units of a column, beside the slanted edges, can the pixel
+     * belong to the previous column instead, which a comparison against the
+     * edge settles. Nothing is allocated, so this is cheap enough to call
+     * for every mouse event.</p>
+     * @param px
+     * @param py
+     * @param coords set to the map coordinates found, which may lie outside
+     * the map.
+     */
+    void pick(int px, int py, Point coords) {
+        int column = 14 * this.scale;
+        int xcoord = Math.floorDiv(px - this.xOffset, column);
+        int u = px - this.xOffset - xcoord * column;
+        int ycoord = rowAt(xcoord, py);
+        if (u < 4 * this.scale) {
+            // Left edges are inside, as the tile lies immediately to their right
+            int v = py - originY(xcoord, ycoord);
+            if (2 * u < Math.abs(v - 8 * this.scale)) {
+                xcoord--;
+                ycoord = rowAt(xcoord, py);
+            }
+        }
+        coords.x = xcoord;
+        coords.y = ycoord;
+    }
+    
+    /**
+     * Row of the tile in the given column whose rows of pixels include the
+     * pixel y coordinate, counting the top row of a tile but not the bottom.
+     * @param xcoord
+     * @param py
+     * @return 
+     */
+    private int rowAt(int xcoord, int py) {
+        // Tile ycoord covers originY(xcoord, ycoord) <= py < originY + 16
+        // units, where originY is linear in ycoord
+        int k = this.height - this.yOffset - py + (8 * xcoord - 16) * this.scale;
+        return -Math.floorDiv(-k, 16 * this.scale);
+    }
+    
+    /**
+     * Lowest column which may have a tile reaching the pixel x coordinate
+     * or to its right.
+     * @param left
+     * @return 
+     */
+    int firstColumn(int left) {
+        return Math.floorDiv(left - this.xOffset - 18 * this.scale, 14 * this.scale);
+    }
+    
+    /**
+     * Highest column which may have a tile starting left of the pixel x
+     * coordinate.
+     * @param right
+     * @return 
+     */
+    int lastColumn(int right) {
+        return Math.floorDiv(right - this.xOffset, 14 * this.scale);
+    }
+    
+    /**
+     * Lowest row of the column which may have a tile starting above the
+     * pixel y coordinate.
+     * @param xcoord
+     * @param bottom
+     * @return 
+     */
+    int firstRow(int xcoord, int bottom) {
+        return Math.floorDiv(this.height - this.yOffset - bottom - (16 - 8 * xcoord) * this.scale,
+                16 * this.scale);
+    }
+    
+    /**
+     * Highest row of the column which may have a tile reaching the pixel y
+     * coordinate or below it.
+     * @param xcoord
+     * @param top
+     * @return 
+     */
+    int lastRow(int xcoord, int top) {
+        return Math.floorDiv(this.height - this.yOffset - top + 1 + 8 * xcoord * this.scale,
+                16 * this.scale);
+    }
+    
+    /**
+     * Build a new Polygon for the tile at the map coordinates.
+     * @param xcoord
+     * @param ycoord
+     * @return 
+     */
+    Polygon getPolygon(int xcoord, int ycoord) {
+        Polygon polygon = new Polygon(this.template.xpoints, this.template.ypoints,
+                this.template.npoints);
+        polygon.translate(originX(xcoord), originY(xcoord, ycoord));
+        return polygon;
+    }
+}
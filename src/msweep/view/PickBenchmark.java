@@ -0,0 +1,141 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.view;
+
+import java.awt.Point;
+import msweep.model.HexGrid;
+
+/**
+ * Checks {@link HexGeometry#pick} against the Polygon containment test it
+ * replaced, for every pixel of the window, and times both.
+ * <p> Run with {@code java -cp MsweepHex.jar msweep.view.PickBenchmark}.
+ * Every scale from {@link Viewport.MIN_SCALE} to {@link Viewport.MAX_SCALE}
+ * is checked, each with the map centered and panned by a few awkward
+ * offsets. Exits with status 1 if any pixel disagrees.</p>
+ * @author Nick Smith
+ */
+public class PickBenchmark {
+    
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 700;
+    
+    /**
+     * Size of the map picked from.
+     */
+    private static final int SIZE = 12;
+    
+    /**
+     * Pans applied to the centered map, as pairs of x and y pixels.
+     */
+    private static final int[] PANS = {0, 0, 1, 1, -7, 3, 13, -29, 101, 57};
+    
+    /**
+     * Number of timed passes over the window for each method.
+     */
+    private static final int ROUNDS = 5;
+    
+    private PickBenchmark() {
+    }
+    
+    public static void main(String[] args) {
+        HexGrid grid = new HexGrid(SIZE);
+        Point coords = new Point();
+        long mismatches = 0;
+        long pixels = 0;
+        for (int scale = Viewport.MIN_SCALE; scale <= Viewport.MAX_SCALE; scale++) {
+            for (int i = 0; i < PANS.length; i += 2) {
+                Viewport viewport = new Viewport(scale, HEIGHT);
+                viewport.center(SIZE, WIDTH, HEIGHT);
+                viewport.pan(PANS[i], PANS[i + 1]);
+                HexGeometry geometry = viewport.getGeometry();
+                for (int px = 0; px < WIDTH; px++) {
+                    for (int py = 0; py < HEIGHT; py++) {
+                        Point expected = polygonPick(geometry, grid, px, py);
+                        geometry.pick(px, py, coords);
+                        boolean found = grid.inRange(coords.x, coords.y);
+                        if (expected == null ? found : !(found && expected.equals(coords))) {
+                            if (mismatches < 10) {
+                                System.out.println("Mismatch at scale " + scale + " pixel "
+                                        + px + "," + py + ": expected " + expected
+                                        + " got " + (found ? coords : null));
+                            }
+                            mismatches++;
+                        }
+                        pixels++;
+                    }
+                }
+            }
+        }
+        System.out.println("Checked " + pixels + " pixels, " + mismatches + " mismatches");
+        
+        Viewport viewport = new Viewport(2, HEIGHT);
+        viewport.center(SIZE, WIDTH, HEIGHT);
+        HexGeometry geometry = viewport.getGeometry();
+        // Run each once before timing so both are compiled
+        long polygonNanos = 0;
+        long analyticNanos = 0;
+        long sink = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int px = 0; px < WIDTH; px++) {
+                for (int py = 0; py < HEIGHT; py++) {
+                    Point p = polygonPick(geometry, grid, px, py);
+                    if (p != null) {
+                        sink += p.x;
+                    }
+                }
+            }
+            long middle = System.nanoTime();
+            for (int px = 0; px < WIDTH; px++) {
+                for (int py = 0; py < HEIGHT; py++) {
+                    geometry.pick(px, py, coords);
+                    if (grid.inRange(coords.x, coords.y)) {
+                        sink += coords.x;
+                    }
+                }
+            }
+            long end = System.nanoTime();
+            if (round > 0) {
+                polygonNanos += middle - start;
+                analyticNanos += end - middle;
+            }
+        }
+        long picks = (long) ROUNDS * WIDTH * HEIGHT;
+        System.out.printf("Polygon:  %.1f ns per pick%n", (double) polygonNanos / picks);
+        System.out.printf("Analytic: %.1f ns per pick%n", (double) analyticNanos / picks);
+        // Keep the results live so the loops aren't optimized away
+        if (sink == 42) {
+            System.out.println();
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * The picking previously done by {@link Board#getCoords}: guess a tile
+     * from the lattice, then test the Polygons of the nine tiles around it.
+     * @param geometry
+     * @param grid
+     * @param px
+     * @param py
+     * @return 
+     */
+    private static Point polygonPick(HexGeometry geometry, HexGrid grid, int px, int py) {
+        int scale = geometry.getScale();
+        int xApproximation = Math.floorDiv(px - geometry.originX(0), 14 * scale);
+        int yApproximation = Math.floorDiv(geometry.originY(xApproximation, 0) + 16 * scale - py,
+                16 * scale);
+        for (int x = xApproximation - 1; x <= xApproximation + 1; x++) {
+            for (int y = yApproximation - 1; y <= yApproximation + 1; y++) {
+                if (grid.inRange(x, y) && geometry.getPolygon(x, y).contains(px, py)) {
+                    return new Point(x, y);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.view;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import msweep.model.MineField;
+
+/**
+ * Pre-rendered images of a tile in each of its possible displays, so drawing
+ * the MineField is a series of image copies.
+ * <p> Images are indexed by {@link MineField#getTileDisplay}. A hidden tile
+ * is only its outline, leaving its inside transparent so anything drawn
+ * underneath (such as the highlight) shows through.</p>
+ * @author Nick Smith
+ */
+class SpriteAtlas {
+    
+    /**
+     * Fill colour of a revealed mine.
+     */
+    private static final Color MINE_FILL = Color.red;
+    /**
+     * Fill colour of a flagged tile.
+     */
+    private static final Color FLAG_FILL = Color.pink;
+    /**
+     * Fill colours indexed by surrounding mine count.
+     */
+    private static final Color[] COUNT_FILLS = {
+        Color.white,
+        new Color(191, 175, 32),
+        new Color(191, 135, 32),
+        new Color(191, 115, 32),
+        new Color(191, 100, 32),
+        new Color(191, 90, 32),
+        new Color(191, 70, 32)
+    };
+    
+    /**
+     * Amount added to a display value to get its index in {@code sprites}.
+     */
+    private static final int INDEX_OFFSET = -MineField.DISPLAY_MINE;
+    
+    /**
+     * The images, indexed by display value plus {@link INDEX_OFFSET}.
+     */
+    private final BufferedImage[] sprites;
+    
+    /**
+     * Font the labels were drawn with.
+     */
+    private final Font font;
+    
+    /**
+     * Render an image for every display value.
+     * @param geometry shape and size of the tiles.
+     * @param font font to draw the labels with.
+     */
+    SpriteAtlas(HexGeometry geometry, Font font) {
+        this.font = font;
+        this.sprites = new BufferedImage[INDEX_OFFSET + COUNT_FILLS.length];
+        this.sprites[MineField.DISPLAY_MINE + INDEX_OFFSET] =
+                render(geometry, MINE_FILL, "*");
+        this.sprites[MineField.DISPLAY_FLAGGED + INDEX_OFFSET] =
+                render(geometry, FLAG_FILL, "!");
+        this.sprites[MineField.DISPLAY_HIDDEN + INDEX_OFFSET] =
+                render(geometry, null, " ");
+        for (int count = 0; count < COUNT_FILLS.length; count++) {
+            this.sprites[count + INDEX_OFFSET] =
+                    render(geometry, COUNT_FILLS[count], Integer.toString(count));
+        }
+    }
+    
+    /**
+     * Get the image for a display value of {@link MineField#getTileDisplay}.
+     * @param display
+     * @return 
+     */
+    BufferedImage get(int display) {
+        return this.sprites[display + INDEX_OFFSET];
+    }
+    
+    /**
+     * Font the labels were drawn with.
+     * @return 
+     */
+    Font getFont() {
+        return this.font;
+    }
+    
+    /**
+     * Draw a single tile image.
+     * @param geometry shape and size of the tile.
+     * @param fill colour to fill the tile with, or null to leave it clear.
+     * @param label text drawn in the middle of the tile.
+     * @return 
+     */
+    private BufferedImage render(HexGeometry geometry, Color fill, String label) {
+        BufferedImage image = new BufferedImage(geometry.tileWidth(),
+                geometry.tileHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setFont(this.font);
+        if (fill != null) {
+            g2d.setColor(fill);
+            g2d.fillPolygon(geometry.getTemplate());
+        }
+        g2d.setColor(Color.black);
+        g2d.drawPolygon(geometry.getTemplate());
+        g2d.drawString(label, geometry.labelX(), geometry.labelY());
+        g2d.dispose();
+        return image;
+    }
+}
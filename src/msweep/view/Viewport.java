@@ -0,0 +1,144 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package msweep.view;
+
+/**
+ * The camera a {@link Board} looks at the map through.
+ * <p> The camera is a zoom level, which is the integer scale of the lattice
+ * units into pixels, and a pixel offset which pans the map. Keeping the
+ * scale whole keeps every tile edge on a pixel, so tiles still line up
+ * exactly at any zoom. The current {@link HexGeometry} is rebuilt whenever
+ * the camera moves.</p>
+ * @author Nick Smith
+ */
+class Viewport {
+    
+    /**
+     * Smallest scale the map can be zoomed out to.
+     */
+    static final int MIN_SCALE = 1;
+    
+    /**
+     * Largest scale the map can be zoomed in to.
+     */
+    static final int MAX_SCALE = 8;
+    
+    /**
+     * Height the y axis is reversed against.
+     */
+    private final int referenceHeight;
+    
+    /**
+     * Scaling of the lattice units into pixels.
+     */
+    private int scale;
+    
+    /**
+     * Pixel offset added to every x coordinate.
+     */
+    private int xOffset;
+    
+    /**
+     * Pixel offset subtracted from every y coordinate.
+     */
+    private int yOffset;
+    
+    /**
+     * Geometry for the current camera.
+     */
+    private HexGeometry geometry;
+    
+    /**
+     * Construct a viewport at the given scale, looking at the origin.
+     * @param scale scaling of the lattice units into pixels.
+     * @param referenceHeight height the y axis is reversed against.
+     */
+    Viewport(int scale, int referenceHeight) {
+        if (scale < MIN_SCALE || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be between "
+                    + MIN_SCALE + " and " + MAX_SCALE);
+        }
+        this.scale = scale;
+        this.referenceHeight = referenceHeight;
+        rebuild();
+    }
+    
+    /**
+     * Move the camera so a map of the given size is centered in a view of
+     * the given dimensions, keeping the current scale.
+     * @param size number of tiles from center to an edge (including the center).
+     * @param width
+     * @param height 
+     */
+    void center(int size, int width, int height) {
+        // Columns are 14 apart and each hex is 18 wide
+        long mapWidth = (14L * (2 * size - 2) + 18) * this.scale;
+        this.xOffset = (int) ((width - mapWidth) / 2);
+        // The map spans -8 * (size - 1) to 24 * (size - 1) + 16 vertically,
+        // which is centered on 8 * size
+        this.yOffset = (int) (this.referenceHeight - height / 2 - 8L * size * this.scale);
+        rebuild();
+    }
+    
+    /**
+     * Move the map by the given number of pixels.
+     * @param dx
+     * @param dy 
+     */
+    void pan(int dx, int dy) {
+        this.xOffset += dx;
+        this.yOffset -= dy;
+        rebuild();
+    }
+    
+    /**
+     * Change the scale by the given number of steps, keeping the point of
+     * the map under the anchor where it is.
+     * @param steps positive to zoom in, negative to zoom out.
+     * @param anchorX
+     * @param anchorY
+     * @return whether the scale changed.
+     */
+    boolean zoom(int steps, int anchorX, int anchorY) {
+        int newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, this.scale + steps));
+        if (newScale == this.scale) {
+            return false;
+        }
+        // Distance in pixels from the map origin to the anchor grows with
+        // the scale
+        long fromOriginX = anchorX - (long) this.xOffset;
+        long fromOriginY = this.referenceHeight - (long) this.yOffset - anchorY;
+        this.xOffset = (int) (anchorX - fromOriginX * newScale / this.scale);
+        this.yOffset = (int) (this.referenceHeight - anchorY - fromOriginY * newScale / this.scale);
+        this.scale = newScale;
+        rebuild();
+        return true;
+    }
+    
+    /**
+     * Geometry of the tiles as seen through the current camera.
+     * @return 
+     */
+    HexGeometry getGeometry() {
+        return this.geometry;
+    }
+    
+    /**
+     * Scaling of the lattice units into pixels.
+     * @return 
+     */
+    int getScale() {
+        return this.scale;
+    }
+    
+    /**
+     * Rebuild the geometry for the current camera.
+     */
+    private void rebuild() {
+        this.geometry = new HexGeometry(this.scale, this.xOffset, this.yOffset,
+                this.referenceHeight);
+    }
+}
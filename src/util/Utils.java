@@ -5,15 +5,17 @@
  */
 package util;
 
-import msweep.Msweep;
-
 /**
  * Utility class implemented for logging functionality.
  * @author Nick Smith
  */
 public class Utils {
     
-    public static final boolean CONSOLE_LOGGING = Msweep.getDebug();
+    /**
+     * Whether {@link log(String)} prints anything, off unless set with
+     * {@link setConsoleLogging}.
+     */
+    private static volatile boolean consoleLogging = false;
     
     /**
      * 
@@ -21,11 +23,27 @@ public class Utils {
     public static final LoggerLevel MINIMUM_LEVEL = LoggerLevel.MEDIUM;
     
     /**
-     * Logs to the console when CONSOLE_LOGGING is enabled.
+     * Turn console logging on or off.
+     * @param enabled 
+     */
+    public static void setConsoleLogging(boolean enabled) {
+        consoleLogging = enabled;
+    }
+    
+    /**
+     * Determine whether console logging is enabled.
+     * @return 
+     */
+    public static boolean isConsoleLogging() {
+        return consoleLogging;
+    }
+    
+    /**
+     * Logs to the console when console logging is enabled.
      * @param s 
      */
     public static void log(String s) {
-        if (CONSOLE_LOGGING) {
+        if (consoleLogging) {
             System.out.println(s);
         }
     }